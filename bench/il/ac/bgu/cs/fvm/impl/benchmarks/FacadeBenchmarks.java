@@ -0,0 +1,181 @@
+package il.ac.bgu.cs.fvm.impl.benchmarks;
+
+import il.ac.bgu.cs.fvm.automata.Automaton;
+import il.ac.bgu.cs.fvm.channelsystem.ChannelSystem;
+import il.ac.bgu.cs.fvm.circuits.Circuit;
+import il.ac.bgu.cs.fvm.impl.FvmFacadeImpl;
+import il.ac.bgu.cs.fvm.impl.ProcessSymmetry;
+import il.ac.bgu.cs.fvm.programgraph.*;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static il.ac.bgu.cs.fvm.util.CollectionHelper.set;
+
+/**
+ * JMH benchmarks for the hot paths of {@link FvmFacadeImpl}, over the scalable models of {@link Models}.
+ * Every benchmark runs in a JVM of its own, so the JIT profile and heap of one don't skew the next.
+ * <p>
+ * Run with {@code ant bench}, passing JMH options through {@code -Dbench.args="..."}, e.g.
+ * {@code -Dbench.args="peterson -p n=3"} for the Peterson benchmarks with 3 processes only. The model
+ * sizes are the {@link Param}s of the states below: {@code n} processes of the filter lock, {@code k}
+ * bits of the counter circuit, {@code n} stages of the pipeline, {@code n} independent workers (with and
+ * without partial order reduction) and {@code k} states per ring of the interleavings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FacadeBenchmarks {
+
+    @State(Scope.Benchmark)
+    public static class Peterson {
+        @Param({"2", "3"})
+        public int n;
+
+        final FvmFacadeImpl fvm = new FvmFacadeImpl();
+        final Set<ActionDef> ad = set(new ParserBasedActDef());
+        final Set<ConditionDef> cd = set(new ParserBasedCondDef());
+        ProgramGraph<Object, String> pg;
+        ProcessSymmetry symmetry;
+        TransitionSystem<Pair<Object, Map<String, Object>>, String, String> ts;
+        Automaton<String, String> violation;
+
+        @Setup
+        public void setup() {
+            pg = Models.peterson(n);
+            symmetry = Models.petersonSymmetry(n);
+            ts = fvm.transitionSystemFromProgramGraph(pg, ad, cd);
+            violation = Models.mutualExclusionViolation(ts);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Counter {
+        @Param({"8", "12"})
+        public int k;
+
+        final FvmFacadeImpl fvm = new FvmFacadeImpl();
+        Circuit circuit;
+
+        @Setup
+        public void setup() {
+            circuit = Models.counter(k);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Pipeline {
+        @Param({"4", "8"})
+        public int n;
+
+        final FvmFacadeImpl fvm = new FvmFacadeImpl();
+        ChannelSystem<String, String> cs;
+
+        @Setup
+        public void setup() {
+            cs = Models.pipeline(n);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Workers {
+        @Param({"3", "4"})
+        public int n;
+
+        final FvmFacadeImpl fvm = new FvmFacadeImpl();
+        ChannelSystem<String, String> cs;
+
+        @Setup
+        public void setup() {
+            cs = Models.workers(n, 3);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Ring {
+        @Param({"64", "256"})
+        public int k;
+
+        final FvmFacadeImpl fvm = new FvmFacadeImpl();
+        TransitionSystem<String, String, String> ts1;
+        TransitionSystem<String, String, String> ts2;
+
+        @Setup
+        public void setup() {
+            ts1 = Models.ring("a", k);
+            ts2 = Models.ring("b", k);
+        }
+    }
+
+    @Benchmark
+    public Object petersonTransitionSystem(Peterson p) {
+        return p.fvm.transitionSystemFromProgramGraph(p.pg, p.ad, p.cd);
+    }
+
+    @Benchmark
+    public Object petersonTransitionSystemSymmetry(Peterson p) {
+        return p.fvm.transitionSystemFromProgramGraph(p.pg, p.ad, p.cd, p.symmetry);
+    }
+
+    @Benchmark
+    public Object petersonReach(Peterson p) {
+        return p.fvm.reach(p.ts);
+    }
+
+    // post and pre of every state
+    @Benchmark
+    public int petersonPostPre(Peterson p) {
+        int size = 0;
+        for (Pair<Object, Map<String, Object>> s : p.ts.getStates())
+            size += p.fvm.post(p.ts, s).size() + p.fvm.pre(p.ts, s).size();
+        return size;
+    }
+
+    @Benchmark
+    public Object petersonProduct(Peterson p) {
+        return p.fvm.product(p.ts, p.violation);
+    }
+
+    @Benchmark
+    public Object petersonVerify(Peterson p) {
+        return p.fvm.verifyAnOmegaRegularProperty(p.ts, p.violation);
+    }
+
+    @Benchmark
+    public Object counterTransitionSystem(Counter c) {
+        return c.fvm.transitionSystemFromCircuit(c.circuit);
+    }
+
+    @Benchmark
+    public Object pipelineTransitionSystem(Pipeline p) {
+        return p.fvm.transitionSystemFromChannelSystem(p.cs);
+    }
+
+    @Benchmark
+    public Object workersTransitionSystem(Workers w) {
+        return w.fvm.transitionSystemFromChannelSystem(w.cs);
+    }
+
+    @Benchmark
+    public Object workersTransitionSystemReduced(Workers w) {
+        return w.fvm.transitionSystemFromChannelSystem(w.cs, Collections.singleton("done"));
+    }
+
+    @Benchmark
+    public Object ringInterleave(Ring r) {
+        return r.fvm.interleave(r.ts1, r.ts2);
+    }
+
+    // handshake on sync
+    @Benchmark
+    public Object ringInterleaveHandshake(Ring r) {
+        return r.fvm.interleave(r.ts1, r.ts2, Collections.singleton("sync"));
+    }
+}
@@ -0,0 +1,258 @@
+package il.ac.bgu.cs.fvm.impl.benchmarks;
+
+import il.ac.bgu.cs.fvm.FvmFacade;
+import il.ac.bgu.cs.fvm.automata.Automaton;
+import il.ac.bgu.cs.fvm.channelsystem.ChannelSystem;
+import il.ac.bgu.cs.fvm.circuits.Circuit;
+import il.ac.bgu.cs.fvm.impl.FvmFacadeImpl;
+import il.ac.bgu.cs.fvm.impl.ProcessSymmetry;
+import il.ac.bgu.cs.fvm.programgraph.PGTransition;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Scalable models for the benchmarks.
+ */
+public class Models {
+
+    private static final FvmFacade fvm = new FvmFacadeImpl();
+
+    private Models() {
+    }
+
+    /**
+     * Process {@code id} (1 based) of the {@code n} process filter lock, the generalization of Peterson's
+     * algorithm: to enter level {@code l} a process sets {@code level_id := l} and {@code victim_l := id},
+     * then waits until no other process is at level {@code l} or above, or it is no longer the victim.
+     * Locations are {@code noncrit<id>}, {@code wait<id>_<l>} and {@code crit<id>}. Every variable is
+     * initialized by exactly one process.
+     */
+    public static ProgramGraph<String, String> petersonProcess(int id, int n) {
+        ProgramGraph<String, String> pg = fvm.createProgramGraph();
+        pg.setName("P" + id);
+        String noncrit = "noncrit" + id;
+        String crit = "crit" + id;
+        pg.addLocation(noncrit);
+        pg.addLocation(crit);
+        pg.setInitial(noncrit, true);
+
+        if (n == 1)
+            pg.addTransition(new PGTransition<>(noncrit, "true", "", crit));
+        else
+            pg.addTransition(new PGTransition<>(noncrit, "true", enterLevel(id, 1), waitAt(id, 1)));
+        for (int l = 1; l < n; l++) {
+            pg.addLocation(waitAt(id, l));
+            if (l < n - 1)
+                pg.addTransition(new PGTransition<>(waitAt(id, l), mayLeave(id, l, n), enterLevel(id, l + 1), waitAt(id, l + 1)));
+            else
+                pg.addTransition(new PGTransition<>(waitAt(id, l), mayLeave(id, l, n), "", crit));
+        }
+        pg.addTransition(new PGTransition<>(crit, "true", "level" + id + ":=0", noncrit));
+
+        List<String> initialization = new ArrayList<>();
+        initialization.add("level" + id + ":=0");
+        if (id < n)
+            initialization.add("victim" + id + ":=0");
+        pg.addInitalization(initialization);
+        return pg;
+    }
+
+    private static String waitAt(int id, int l) {
+        return "wait" + id + "_" + l;
+    }
+
+    private static String enterLevel(int id, int l) {
+        return "atomic{level" + id + ":=" + l + ";victim" + l + ":=" + id + "}";
+    }
+
+    // nobody else is at level l or above, or someone else became the victim of level l
+    private static String mayLeave(int id, int l, int n) {
+        StringBuilder nobodyAbove = new StringBuilder();
+        for (int k = 1; k <= n; k++) {
+            if (k == id)
+                continue;
+            if (nobodyAbove.length() > 0)
+                nobodyAbove.append(" && ");
+            nobodyAbove.append("level").append(k).append(" < ").append(l);
+        }
+        return "(" + nobodyAbove + ") || victim" + l + " != " + id;
+    }
+
+    /**
+     * @return the {@code n} filter lock processes, interleaved into a single program graph.
+     */
+    @SuppressWarnings("unchecked")
+    public static ProgramGraph<Object, String> peterson(int n) {
+        ProgramGraph<?, String> pg = petersonProcess(1, n);
+        for (int id = 2; id <= n; id++)
+            pg = fvm.interleave(pg, petersonProcess(id, n));
+        return (ProgramGraph<Object, String>) pg;
+    }
+
+    /**
+     * @return the symmetry of {@link #peterson(int)}: the processes' locations differ by their id, each
+     * has its own {@code level} variable, and the {@code victim} variables hold process ids.
+     */
+    public static ProcessSymmetry petersonSymmetry(int n) {
+        List<List<String>> levels = new ArrayList<>();
+        for (int id = 1; id <= n; id++)
+            levels.add(Collections.singletonList("level" + id));
+        Set<String> victims = new HashSet<>();
+        for (int l = 1; l < n; l++)
+            victims.add("victim" + l);
+        // noncrit3 -> noncrit, wait3_2 -> wait_2
+        return new ProcessSymmetry(n, location -> location.toString().replaceFirst("\\d+", ""), levels, victims);
+    }
+
+    /**
+     * A pipeline of {@code n} one place buffers {@code f1..fn}: a producer fills {@code f1}, stage
+     * {@code i} moves a token from {@code fi} to {@code f(i+1)} and a consumer empties {@code fn}. Every
+     * stage is a separate program graph of the channel system, sharing the buffer variables.
+     */
+    public static ChannelSystem<String, String> pipeline(int n) {
+        List<ProgramGraph<String, String>> stages = new ArrayList<>();
+        stages.add(stage("producer", "f1 == 0", "f1:=1", Collections.emptyList()));
+        for (int i = 1; i < n; i++)
+            stages.add(stage("stage" + i, "f" + i + " == 1 && f" + (i + 1) + " == 0", "atomic{f" + i + ":=0;f" + (i + 1) + ":=1}",
+                    Collections.singletonList("f" + i + ":=0")));
+        stages.add(stage("consumer", "f" + n + " == 1", "f" + n + ":=0", Collections.singletonList("f" + n + ":=0")));
+        return new ChannelSystem<>(stages);
+    }
+
+    /**
+     * {@code n} workers, each counting its own variable {@code xi} up to {@code k} at {@code worki}, then
+     * moving to {@code readyi} and checking in at {@code donei} by incrementing the shared {@code done}.
+     * The counting steps of different workers are independent, so partial order reduction applies.
+     */
+    public static ChannelSystem<String, String> workers(int n, int k) {
+        List<ProgramGraph<String, String>> workers = new ArrayList<>();
+        for (int i = 1; i <= n; i++) {
+            ProgramGraph<String, String> pg = fvm.createProgramGraph();
+            pg.setName("worker" + i);
+            String work = "work" + i;
+            String ready = "ready" + i;
+            String done = "done" + i;
+            pg.addLocation(work);
+            pg.addLocation(ready);
+            pg.addLocation(done);
+            pg.setInitial(work, true);
+            pg.addTransition(new PGTransition<>(work, "x" + i + " < " + k, "x" + i + ":=x" + i + "+1", work));
+            pg.addTransition(new PGTransition<>(work, "x" + i + " == " + k, "", ready));
+            pg.addTransition(new PGTransition<>(ready, "", "done:=done+1", done));
+            pg.addInitalization(i == 1 ? Arrays.asList("x1:=0", "done:=0") : Collections.singletonList("x" + i + ":=0"));
+            workers.add(pg);
+        }
+        return new ChannelSystem<>(workers);
+    }
+
+    private static ProgramGraph<String, String> stage(String name, String condition, String action, List<String> initialization) {
+        ProgramGraph<String, String> pg = fvm.createProgramGraph();
+        pg.setName(name);
+        pg.addLocation(name);
+        pg.setInitial(name, true);
+        pg.addTransition(new PGTransition<>(name, condition, action, name));
+        pg.addInitalization(initialization);
+        return pg;
+    }
+
+    /**
+     * A {@code k} bit counter, incremented when input {@code inc} is set, with output {@code carry} set
+     * when an increment wraps around.
+     */
+    public static Circuit counter(int k) {
+        return new Circuit() {
+            @Override
+            public Set<String> getInputPortNames() {
+                return Collections.singleton("inc");
+            }
+
+            @Override
+            public Set<String> getRegisterNames() {
+                Set<String> registers = new LinkedHashSet<>();
+                for (int i = 0; i < k; i++)
+                    registers.add("r" + i);
+                return registers;
+            }
+
+            @Override
+            public Set<String> getOutputPortNames() {
+                return Collections.singleton("carry");
+            }
+
+            @Override
+            public Map<String, Boolean> updateRegisters(Map<String, Boolean> inputs, Map<String, Boolean> registers) {
+                Map<String, Boolean> next = new HashMap<>();
+                boolean carry = inputs.get("inc");
+                for (int i = 0; i < k; i++) {
+                    boolean bit = registers.get("r" + i);
+                    next.put("r" + i, bit ^ carry);
+                    carry = bit && carry;
+                }
+                return next;
+            }
+
+            @Override
+            public Map<String, Boolean> computeOutputs(Map<String, Boolean> inputs, Map<String, Boolean> registers) {
+                boolean carry = inputs.get("inc");
+                for (int i = 0; i < k && carry; i++)
+                    carry = registers.get("r" + i);
+                return Collections.singletonMap("carry", carry);
+            }
+        };
+    }
+
+    /**
+     * A cycle of {@code k} states {@code name0..name(k-1)}, each labeled by its own name. The step out of
+     * state 0 is the shared action {@code sync}, the others are local to the ring.
+     */
+    public static TransitionSystem<String, String, String> ring(String name, int k) {
+        TransitionSystem<String, String, String> ts = fvm.createTransitionSystem();
+        ts.setName(name);
+        ts.addAction("sync");
+        ts.addAction(name + "_step");
+        for (int i = 0; i < k; i++) {
+            ts.addState(name + i);
+            ts.addAtomicProposition(name + i);
+            ts.addToLabel(name + i, name + i);
+        }
+        ts.setInitial(name + 0, true);
+        for (int i = 0; i < k; i++)
+            ts.addTransition(new Transition<>(name + i, i == 0 ? "sync" : name + "_step", name + ((i + 1) % k)));
+        return ts;
+    }
+
+    /**
+     * The automaton for "two processes are never critical at once" over the labels of {@code ts}: it
+     * moves to the accepting sink once a state labeled with two critical locations is read.
+     */
+    public static <S, A> Automaton<String, String> mutualExclusionViolation(TransitionSystem<S, A, String> ts) {
+        Automaton<String, String> aut = new Automaton<>();
+        Set<Set<String>> labels = new HashSet<>();
+        for (S s : ts.getStates())
+            labels.add(ts.getLabel(s));
+        for (Set<String> label : labels) {
+            aut.addTransition("q0", label, isViolation(label) ? "q1" : "q0");
+            aut.addTransition("q1", label, "q1");
+        }
+        aut.setInitial("q0");
+        aut.setAccepting("q1");
+        return aut;
+    }
+
+    // a label naming two critical locations, e.g. the location "<<crit1,noncrit2>,crit3>"
+    private static boolean isViolation(Set<String> label) {
+        for (String ap : label) {
+            Matcher crit = CRITICAL.matcher(ap);
+            if (crit.find() && crit.find())
+                return true;
+        }
+        return false;
+    }
+
+    private static final Pattern CRITICAL = Pattern.compile("(?<!non)crit\\d");
+}
@@ -0,0 +1,56 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.*;
+
+/**
+ * Outgoing transitions of any {@link TransitionSystem}, without rescanning the whole transition set on
+ * every lookup. Our own implementations are already indexed and are used as is; for any other
+ * implementation the index is built once, on first use. Lookups may come from several threads.
+ */
+class Adjacency<S, A> {
+
+    private final TransitionSystem<S, A, ?> ts;
+    private volatile Map<S, List<Transition<S, A>>> index;
+
+    Adjacency(TransitionSystem<S, A, ?> ts) {
+        this.ts = ts;
+    }
+
+    Collection<Transition<S, A>> outgoing(S s) {
+        if (ts instanceof TransitionSystemImpl)
+            return ((TransitionSystemImpl<S, A, ?>) ts).outgoing(s);
+
+        if (ts instanceof CompactTransitionSystem) {
+            CompactTransitionSystem<S, A, ?> cts = (CompactTransitionSystem<S, A, ?>) ts;
+            int id = cts.stateId(s);
+            if (id < 0)
+                return Collections.emptyList();
+            List<Transition<S, A>> out = new ArrayList<>(cts.endOut(id) - cts.firstOut(id));
+            for (int e = cts.firstOut(id); e < cts.endOut(id); e++)
+                out.add(new Transition<>(s, cts.action(cts.outAction(e)), cts.state(cts.target(e))));
+            return out;
+        }
+
+        List<Transition<S, A>> out = index().get(s);
+        return out == null ? Collections.emptyList() : out;
+    }
+
+    private Map<S, List<Transition<S, A>>> index() {
+        Map<S, List<Transition<S, A>>> built = index;
+        if (built == null) {
+            synchronized (this) {
+                built = index;
+                if (built == null) {
+                    built = new HashMap<>();
+                    for (Transition<S, A> t : ts.getTransitions())
+                        built.computeIfAbsent(t.getFrom(), k -> new ArrayList<>()).add(t);
+                    index = built;
+                }
+            }
+        }
+        return built;
+    }
+}
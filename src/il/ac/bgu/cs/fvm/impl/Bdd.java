@@ -0,0 +1,239 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * A small reduced ordered binary decision diagram package over a fixed number of variables.
+ * <p>
+ * A BDD is an {@code int} handle into the node tables of the {@code Bdd} instance that made it;
+ * {@link #FALSE} and {@link #TRUE} are the terminals and variable {@code 0} is at the top. Nodes are
+ * shared through a unique table and never freed, so an instance is meant to live for one computation.
+ * Not thread safe.
+ */
+class Bdd {
+
+    static final int FALSE = 0;
+    static final int TRUE = 1;
+
+    private static final int AND = 0;
+    private static final int OR = 1;
+    private static final int DIFF = 2;
+
+    private final int variableCount;
+
+    private int[] var;
+    private int[] low;
+    private int[] high;
+    private int size;
+
+    // open addressing over node indices, -1 marks an empty slot
+    private int[] unique;
+
+    // direct mapped cache of apply results
+    private final int[] cacheF;
+    private final int[] cacheG;
+    private final int[] cacheOp;
+    private final int[] cacheResult;
+
+    Bdd(int variableCount) {
+        this.variableCount = variableCount;
+        var = new int[1024];
+        low = new int[1024];
+        high = new int[1024];
+        var[FALSE] = variableCount;
+        var[TRUE] = variableCount;
+        size = 2;
+        unique = new int[2048];
+        Arrays.fill(unique, -1);
+
+        int cacheSize = 1 << 16;
+        cacheF = new int[cacheSize];
+        cacheG = new int[cacheSize];
+        cacheOp = new int[cacheSize];
+        cacheResult = new int[cacheSize];
+        Arrays.fill(cacheOp, -1);
+    }
+
+    int variableCount() {
+        return variableCount;
+    }
+
+    /**
+     * @return the number of nodes made so far, terminals included.
+     */
+    int nodeCount() {
+        return size;
+    }
+
+    /**
+     * @return the BDD of the single assignment {@code bits} (a minterm over all variables).
+     */
+    int cube(boolean[] bits) {
+        int f = TRUE;
+        for (int v = variableCount - 1; v >= 0; v--)
+            f = bits[v] ? mk(v, FALSE, f) : mk(v, f, FALSE);
+        return f;
+    }
+
+    int and(int f, int g) {
+        return apply(AND, f, g);
+    }
+
+    int or(int f, int g) {
+        return apply(OR, f, g);
+    }
+
+    /**
+     * @return {@code f} and not {@code g}.
+     */
+    int diff(int f, int g) {
+        return apply(DIFF, f, g);
+    }
+
+    boolean contains(int f, boolean[] bits) {
+        while (f > TRUE)
+            f = bits[var[f]] ? high[f] : low[f];
+        return f == TRUE;
+    }
+
+    /**
+     * @return the number of assignments to all the variables that satisfy {@code f}.
+     */
+    double satCount(int f) {
+        return satCount(f, new HashMap<>()) * Math.pow(2, var[f]);
+    }
+
+    private double satCount(int f, Map<Integer, Double> memo) {
+        if (f <= TRUE)
+            return f;
+        Double known = memo.get(f);
+        if (known != null)
+            return known;
+        double count = satCount(low[f], memo) * Math.pow(2, var[low[f]] - var[f] - 1)
+                + satCount(high[f], memo) * Math.pow(2, var[high[f]] - var[f] - 1);
+        memo.put(f, count);
+        return count;
+    }
+
+    /**
+     * Calls {@code visitor} once for every satisfying assignment of {@code f}. The array passed is reused
+     * between calls.
+     */
+    void forEachMinterm(int f, Consumer<boolean[]> visitor) {
+        if (f != FALSE)
+            forEachMinterm(f, 0, new boolean[variableCount], visitor);
+    }
+
+    private void forEachMinterm(int f, int v, boolean[] bits, Consumer<boolean[]> visitor) {
+        if (v == variableCount) {
+            visitor.accept(bits);
+            return;
+        }
+        if (var[f] > v) {
+            // v does not appear on this path, both of its values satisfy f
+            bits[v] = false;
+            forEachMinterm(f, v + 1, bits, visitor);
+            bits[v] = true;
+            forEachMinterm(f, v + 1, bits, visitor);
+            return;
+        }
+        if (low[f] != FALSE) {
+            bits[v] = false;
+            forEachMinterm(low[f], v + 1, bits, visitor);
+        }
+        if (high[f] != FALSE) {
+            bits[v] = true;
+            forEachMinterm(high[f], v + 1, bits, visitor);
+        }
+    }
+
+    private int apply(int op, int f, int g) {
+        switch (op) {
+            case AND:
+                if (f == FALSE || g == FALSE)
+                    return FALSE;
+                if (f == TRUE || f == g)
+                    return g;
+                if (g == TRUE)
+                    return f;
+                break;
+            case OR:
+                if (f == TRUE || g == TRUE)
+                    return TRUE;
+                if (f == FALSE || f == g)
+                    return g;
+                if (g == FALSE)
+                    return f;
+                break;
+            default:
+                if (f == FALSE || g == TRUE || f == g)
+                    return FALSE;
+                if (g == FALSE)
+                    return f;
+                break;
+        }
+
+        int slot = (int) ((((long) f * 12582917L) ^ ((long) g * 4256249L) ^ op) & (cacheOp.length - 1));
+        if (cacheOp[slot] == op && cacheF[slot] == f && cacheG[slot] == g)
+            return cacheResult[slot];
+
+        int v = Math.min(var[f], var[g]);
+        int f0 = var[f] == v ? low[f] : f;
+        int f1 = var[f] == v ? high[f] : f;
+        int g0 = var[g] == v ? low[g] : g;
+        int g1 = var[g] == v ? high[g] : g;
+        int result = mk(v, apply(op, f0, g0), apply(op, f1, g1));
+
+        cacheOp[slot] = op;
+        cacheF[slot] = f;
+        cacheG[slot] = g;
+        cacheResult[slot] = result;
+        return result;
+    }
+
+    private int mk(int v, int l, int h) {
+        if (l == h)
+            return l;
+        int mask = unique.length - 1;
+        int slot = hash(v, l, h) & mask;
+        while (unique[slot] != -1) {
+            int n = unique[slot];
+            if (var[n] == v && low[n] == l && high[n] == h)
+                return n;
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == var.length) {
+            var = Arrays.copyOf(var, size * 2);
+            low = Arrays.copyOf(low, size * 2);
+            high = Arrays.copyOf(high, size * 2);
+        }
+        int n = size++;
+        var[n] = v;
+        low[n] = l;
+        high[n] = h;
+        unique[slot] = n;
+        if (size * 2 > unique.length)
+            rehash();
+        return n;
+    }
+
+    private void rehash() {
+        unique = new int[unique.length * 2];
+        Arrays.fill(unique, -1);
+        int mask = unique.length - 1;
+        for (int n = 2; n < size; n++) {
+            int slot = hash(var[n], low[n], high[n]) & mask;
+            while (unique[slot] != -1)
+                slot = (slot + 1) & mask;
+            unique[slot] = n;
+        }
+    }
+
+    private static int hash(int v, int l, int h) {
+        int x = v * 31 + l;
+        x = x * 0x9E3779B1 + h;
+        return x ^ (x >>> 16);
+    }
+}
@@ -0,0 +1,164 @@
+package il.ac.bgu.cs.fvm.impl;
+
+/**
+ * Bitstate hashing (Holzmann's supertrace): instead of the states, only {@code k} bits per state are
+ * kept, in one large bit array, at positions taken from a 64 bit hash of the state's
+ * {@link CanonicalBytes canonical encoding}. A state whose bits are all set already counts as seen, so
+ * once the array fills up some new states are wrongly taken for old ones and never explored. Nothing
+ * is ever reported that isn't there: a counterexample found with this store is a real one, but finding
+ * none proves nothing.
+ * <p>
+ * The store keeps statistics to judge a run by: the hash factor (bits per stored state; above about 100
+ * omissions are rare), the probability that the next new state is omitted, and the estimated number of
+ * states omitted so far, hence the estimated coverage. Stores are handed out per exploration, so to read
+ * them keep a reference from the supplier, e.g.
+ * <pre>{@code
+ * List<BitStateStore> stores = new ArrayList<>();
+ * fvm.setStateStore(() -> { BitStateStore s = new BitStateStore(30, 3); stores.add(s); return s; }, false);
+ * }</pre>
+ * The statistics stay readable after {@link #close()}.
+ */
+public class BitStateStore implements StateStore {
+
+    private final int hashes;
+    private final long bitCount;
+    private final long mask;
+    private long[] bits;
+
+    private long setBits;
+    private long size;
+    private double expectedOmissions;
+
+    /**
+     * @param log2Bits the size of the bit array, as a power of 2: between 6 and 36 (8GB, the most
+     *                 a single {@code long[]} can hold).
+     * @param hashes   the number of bits set per state, {@code k}; 2 or 3 are the usual choices.
+     */
+    public BitStateStore(int log2Bits, int hashes) {
+        if (log2Bits < 6 || log2Bits > 36)
+            throw new IllegalArgumentException("log2Bits must be between 6 and 36: " + log2Bits);
+        if (hashes < 1)
+            throw new IllegalArgumentException("hashes must be positive: " + hashes);
+        this.hashes = hashes;
+        this.bitCount = 1L << log2Bits;
+        this.mask = bitCount - 1;
+        this.bits = new long[(int) (bitCount >>> 6)];
+    }
+
+    @Override
+    public boolean add(Object state) {
+        double omission = getOmissionProbability();
+        long h1 = hash(CanonicalBytes.of(state));
+        long h2 = mix(h1 + 0x9E3779B97F4A7C15L) | 1;
+        boolean added = false;
+        // double hashing, h1 + i * h2, is as good as k independent hashes here
+        for (int i = 0; i < hashes; i++) {
+            long bit = (h1 + i * h2) & mask;
+            int word = (int) (bit >>> 6);
+            long m = 1L << bit;
+            if ((bits[word] & m) == 0) {
+                bits[word] |= m;
+                setBits++;
+                added = true;
+            }
+        }
+        if (added) {
+            size++;
+            // each state stored stands for 1 / (1 - p) tries, of which p / (1 - p) were wrongly dropped
+            expectedOmissions += omission / (1 - omission);
+        }
+        return added;
+    }
+
+    @Override
+    public boolean contains(Object state) {
+        long h1 = hash(CanonicalBytes.of(state));
+        long h2 = mix(h1 + 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (h1 + i * h2) & mask;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of states stored, i.e. that set at least one new bit.
+     */
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public boolean isExact() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        bits = null;
+    }
+
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    public int getHashCount() {
+        return hashes;
+    }
+
+    /**
+     * @return the bits available per stored state.
+     */
+    public double getHashFactor() {
+        return size == 0 ? Double.POSITIVE_INFINITY : (double) bitCount / size;
+    }
+
+    /**
+     * @return the probability that a state not seen yet would be taken for a seen one now: the
+     * fraction of set bits, to the power {@code k}.
+     */
+    public double getOmissionProbability() {
+        return Math.pow((double) setBits / bitCount, hashes);
+    }
+
+    /**
+     * @return the expected number of distinct states wrongly taken for seen ones so far. Their own
+     * successors are not counted, as nothing is known of them.
+     */
+    public double getEstimatedOmissions() {
+        return expectedOmissions;
+    }
+
+    /**
+     * @return the estimated fraction of the distinct states met that were stored, between 0 and 1.
+     */
+    public double getEstimatedCoverage() {
+        return size == 0 ? 1 : size / (size + expectedOmissions);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d states in 2^%d bits, k=%d: hash factor %.1f, omission probability %.2e, estimated coverage %.4f%%",
+                size, Long.numberOfTrailingZeros(bitCount), hashes, getHashFactor(), getOmissionProbability(), 100 * getEstimatedCoverage());
+    }
+
+    // FNV-1a 64, finished with a mix so every bit depends on every byte
+    private static long hash(byte[] bytes) {
+        long h = 0xCBF29CE484222325L;
+        for (byte b : bytes)
+            h = (h ^ (b & 0xFF)) * 0x100000001B3L;
+        return mix(h);
+    }
+
+    // the MurmurHash3 finalizer
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1AE53A5L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,124 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static il.ac.bgu.cs.fvm.impl.TransitionSystemCodec.*;
+
+/**
+ * A byte encoding of state values in which two values have the same bytes exactly when they are equal,
+ * whatever their concrete classes: the entries of a map and the elements of a set are written in the
+ * (unsigned, lexicographic) order of their own encodings, so two equal {@code HashMap}s built in a
+ * different order encode alike. Supports the same values as {@link TransitionSystemCodec}, with the
+ * same tags, but every string is written in full.
+ */
+final class CanonicalBytes {
+
+    private static final Comparator<byte[]> ORDER = CanonicalBytes::compare;
+
+    private byte[] buffer = new byte[64];
+    private int length;
+
+    private CanonicalBytes() {
+    }
+
+    static byte[] of(Object value) {
+        CanonicalBytes out = new CanonicalBytes();
+        out.value(value);
+        return Arrays.copyOf(out.buffer, out.length);
+    }
+
+    static int compare(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (diff != 0)
+                return diff;
+        }
+        return a.length - b.length;
+    }
+
+    private void value(Object v) {
+        if (v == null) {
+            write(NULL);
+        } else if (v instanceof String) {
+            byte[] bytes = ((String) v).getBytes(StandardCharsets.UTF_8);
+            write(STRING);
+            varint(bytes.length);
+            write(bytes);
+        } else if (v instanceof Integer) {
+            write(INTEGER);
+            int i = (Integer) v;
+            varint((i << 1) ^ (i >> 31));
+        } else if (v instanceof Long) {
+            write(LONG);
+            long l = (Long) v;
+            varlong((l << 1) ^ (l >> 63));
+        } else if (v instanceof Boolean) {
+            write((Boolean) v ? TRUE : FALSE);
+        } else if (v instanceof Pair) {
+            write(PAIR);
+            value(((Pair<?, ?>) v).first);
+            value(((Pair<?, ?>) v).second);
+        } else if (v instanceof List) {
+            write(LIST);
+            varint(((List<?>) v).size());
+            for (Object element : (List<?>) v)
+                value(element);
+        } else if (v instanceof Set) {
+            List<byte[]> elements = new ArrayList<>();
+            for (Object element : (Set<?>) v)
+                elements.add(of(element));
+            elements.sort(ORDER);
+            write(SET);
+            varint(elements.size());
+            for (byte[] element : elements)
+                write(element);
+        } else if (v instanceof Map) {
+            // keys are distinct, so sorting the entries by key alone is a total order
+            List<byte[][]> entries = new ArrayList<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) v).entrySet())
+                entries.add(new byte[][]{of(entry.getKey()), of(entry.getValue())});
+            entries.sort((a, b) -> compare(a[0], b[0]));
+            write(MAP);
+            varint(entries.size());
+            for (byte[][] entry : entries) {
+                write(entry[0]);
+                write(entry[1]);
+            }
+        } else {
+            throw new IllegalArgumentException("Can't encode a value of " + v.getClass() + ": " + v);
+        }
+    }
+
+    private void varint(int v) {
+        while ((v & ~0x7F) != 0) {
+            write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        write(v);
+    }
+
+    private void varlong(long v) {
+        while ((v & ~0x7FL) != 0) {
+            write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        write((int) v);
+    }
+
+    private void write(int b) {
+        if (length == buffer.length)
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        buffer[length++] = (byte) b;
+    }
+
+    private void write(byte[] bytes) {
+        if (length + bytes.length > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + bytes.length));
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+}
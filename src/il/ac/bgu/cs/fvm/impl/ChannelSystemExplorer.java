@@ -0,0 +1,238 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.channelsystem.ChannelSystem;
+import il.ac.bgu.cs.fvm.channelsystem.InterleavingActDef;
+import il.ac.bgu.cs.fvm.channelsystem.ParserBasedInterleavingActDef;
+import il.ac.bgu.cs.fvm.programgraph.*;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Explores the state space of a {@link ChannelSystem} with an explicit depth first worklist, building
+ * the transition system as it goes. A state is marked visited when it is first discovered, so it enters
+ * the frontier at most once and the frontier never holds more than the states seen so far; no call
+ * stack or intermediate transition lists grow with the depth of the system. The transition system being
+ * built is the visited set, unless the {@link StateStore} is approximate (see
+ * {@link StateStores#forExploration}).
+ * <p>
+ * Optionally, a {@link PartialOrderReduction partial order reduction} explores, where it can, the steps
+ * of a single process instead of all the interleavings of independent steps. Its cycle proviso: a
+ * process's steps are taken alone only if none of them leads to a state already seen, so every cycle of
+ * the reduced system has a fully expanded state.
+ * <p>
+ * The progress counters may be read from another thread while {@link #explore()} runs.
+ */
+public class ChannelSystemExplorer<L, A> {
+
+    private final Set<Pair<List<L>, Map<String, Object>>> initialStates;
+    private final List<ProgramGraph<L, A>> programGraphs;
+    private final List<ProgramGraphAdjacency<L, A>> edges;
+    private final Function<TransitionSystem<?, ?, ?>, StateStore> visitedSets;
+
+    private final ActionDef async = new ParserBasedActDef();
+    private final InterleavingActDef sync = new ParserBasedInterleavingActDef();
+    private final ConditionDef cond = new ParserBasedCondDef();
+    private final EvaluationCache evaluations = new EvaluationCache(Collections.singleton(async), Collections.singleton(cond));
+
+    private volatile long statesSeen;
+    private volatile long transitionsEmitted;
+    private volatile int frontierSize;
+    private volatile long reducedExpansions;
+
+    private PartialOrderReduction<L, A> reduction;
+
+    private TransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> ts;
+    private StateStore visited;
+    private Deque<Pair<List<L>, Map<String, Object>>> frontier;
+
+    ChannelSystemExplorer(ChannelSystem<L, A> cs, Set<Pair<List<L>, Map<String, Object>>> initialStates,
+                          Function<TransitionSystem<?, ?, ?>, StateStore> visitedSets) {
+        this.initialStates = new LinkedHashSet<>();
+        for (Pair<List<L>, Map<String, Object>> state : initialStates)
+            this.initialStates.add(new Pair<>(state.getFirst(), evaluations.compact(state.getSecond())));
+        this.visitedSets = visitedSets;
+        this.programGraphs = cs.getProgramGraphs();
+        this.edges = new ArrayList<>();
+        for (ProgramGraph<L, A> pg : programGraphs)
+            edges.add(new ProgramGraphAdjacency<>(pg));
+    }
+
+    /**
+     * Turns on partial order reduction for the following explorations, preserving the stutter invariant
+     * properties of {@code observedVariables}; {@code null} turns it off.
+     */
+    public void setPartialOrderReduction(Set<String> observedVariables) {
+        reduction = observedVariables == null ? null : new PartialOrderReduction<>(programGraphs, sync, observedVariables);
+    }
+
+    /**
+     * Explores every state reachable from the initial states.
+     *
+     * @return the transition system of the channel system.
+     */
+    public TransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> explore() {
+        ts = new TransitionSystemImpl<>();
+        visited = visitedSets.apply(ts);
+        frontier = new ArrayDeque<>();
+        statesSeen = 0;
+        transitionsEmitted = 0;
+        reducedExpansions = 0;
+
+        try {
+            for (Pair<List<L>, Map<String, Object>> state : initialStates)
+                if (discover(state))
+                    ts.setInitial(state, true);
+
+            while (!frontier.isEmpty()) {
+                Pair<List<L>, Map<String, Object>> state = frontier.pop();
+                frontierSize = frontier.size();
+                expand(state);
+            }
+        } finally {
+            visited.close();
+            visited = null;
+        }
+
+        return ts;
+    }
+
+    /**
+     * @return the number of distinct states discovered so far.
+     */
+    public long getStatesSeen() {
+        return statesSeen;
+    }
+
+    /**
+     * @return the number of transitions emitted so far (a transition reached twice is counted twice).
+     */
+    public long getTransitionsEmitted() {
+        return transitionsEmitted;
+    }
+
+    /**
+     * @return the number of discovered states that are still waiting to be expanded.
+     */
+    public int getFrontierSize() {
+        return frontierSize;
+    }
+
+    /**
+     * @return the number of states expanded through the steps of a single process, with partial order reduction.
+     */
+    public long getReducedExpansions() {
+        return reducedExpansions;
+    }
+
+    private void expand(Pair<List<L>, Map<String, Object>> state) {
+        if (reduction == null || !expandAmple(state))
+            expandFully(state);
+    }
+
+    // expands the state by the steps of one process only, if some process's steps make an ample set
+    private boolean expandAmple(Pair<List<L>, Map<String, Object>> state) {
+        for (int index = 0; index < edges.size(); index++) {
+            L location = state.getFirst().get(index);
+            if (!reduction.isAmpleCandidate(index, location))
+                continue;
+            List<A> actions = new ArrayList<>();
+            List<Pair<List<L>, Map<String, Object>>> targets = new ArrayList<>();
+            boolean closesCycle = false;
+            for (PGTransition<L, A> transition : edges.get(index).outgoing(location)) {
+                if (!evaluations.evaluate(state.getSecond(), transition.getCondition()))
+                    continue;
+                Map<String, Object> eval = evaluations.effect(async, state.getSecond(), transition.getAction());
+                if (eval == null)
+                    continue;
+                List<L> locations = new ArrayList<>(state.getFirst());
+                locations.set(index, transition.getTo());
+                Pair<List<L>, Map<String, Object>> target = new Pair<>(locations, eval);
+                closesCycle |= visited.contains(target);
+                actions.add(transition.getAction());
+                targets.add(target);
+            }
+            if (targets.isEmpty() || closesCycle)
+                continue;
+            for (int i = 0; i < targets.size(); i++)
+                emit(state, actions.get(i), targets.get(i));
+            reducedExpansions++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expandFully(Pair<List<L>, Map<String, Object>> state) {
+        for (int index = 0; index < edges.size(); index++) {
+            for (PGTransition<L, A> transition : edges.get(index).outgoing(state.getFirst().get(index))) {
+                if (!evaluations.evaluate(state.getSecond(), transition.getCondition()))
+                    continue;
+
+                String actionString = transition.getAction().toString();
+                if (sync.isOneSidedAction(actionString)) {
+                    for (int index2 = 0; index2 < edges.size(); index2++) {
+                        for (PGTransition<L, A> transition2 : edges.get(index2).outgoing(state.getFirst().get(index2))) {
+                            String actionString2 = transition2.getAction().toString();
+                            if (!sync.isOneSidedAction(actionString2))
+                                continue;
+                            if (!isHandshake(actionString, actionString2) || !evaluations.evaluate(state.getSecond(), transition2.getCondition()))
+                                continue;
+
+                            String newAction = index < index2 ? actionString + "|" + actionString2 : actionString2 + "|" + actionString;
+                            A castAction = (A) newAction;
+                            List<L> locations = new ArrayList<>(state.getFirst());
+                            locations.set(index, transition.getTo());
+                            locations.set(index2, transition2.getTo());
+                            Map<String, Object> eval = evaluations.compact(sync.effect(state.getSecond(), castAction));
+                            if (eval != null)
+                                emit(state, castAction, new Pair<>(locations, eval));
+                        }
+                    }
+                } else {
+                    List<L> locations = new ArrayList<>(state.getFirst());
+                    locations.set(index, transition.getTo());
+                    Map<String, Object> eval = evaluations.effect(async, state.getSecond(), transition.getAction());
+                    if (eval != null)
+                        emit(state, transition.getAction(), new Pair<>(locations, eval));
+                }
+            }
+        }
+    }
+
+    // a write and a read on the same channel
+    private boolean isHandshake(String actionString, String actionString2) {
+        return ((actionString.contains("!") && actionString2.contains("?")) ||
+                (actionString.contains("?") && actionString2.contains("!"))) &&
+                actionString.substring(0, actionString.length() - 1).equals(actionString2.substring(0, actionString2.length() - 1));
+    }
+
+    private void emit(Pair<List<L>, Map<String, Object>> from, A action, Pair<List<L>, Map<String, Object>> to) {
+        if (!discover(to))
+            return;
+        ts.addAction(action);
+        ts.addTransition(new Transition<>(from, action, to));
+        transitionsEmitted++;
+    }
+
+    // returns false if an approximate store wrongly took the state for a seen one, so it is not in the system
+    private boolean discover(Pair<List<L>, Map<String, Object>> state) {
+        if (!visited.add(state))
+            return visited.isExact() || ts.getStates().contains(state);
+        ts.addState(state);
+        for (L small_state : state.getFirst()) {
+            ts.addAtomicProposition(small_state.toString());
+            ts.addToLabel(state, small_state.toString());
+        }
+        for (Map.Entry<String, Object> var_vals : state.getSecond().entrySet()) {
+            ts.addAtomicProposition(var_vals.getKey() + " = " + var_vals.getValue().toString());
+            ts.addToLabel(state, var_vals.getKey() + " = " + var_vals.getValue().toString());
+        }
+        frontier.push(state);
+        frontierSize = frontier.size();
+        statesSeen++;
+        return true;
+    }
+}
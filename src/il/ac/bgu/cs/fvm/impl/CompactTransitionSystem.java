@@ -0,0 +1,513 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.exceptions.StateNotFoundException;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.*;
+
+/**
+ * A frozen, read-only transition system. Every state, action and atomic proposition is interned to a
+ * dense int id, transitions are kept in CSR form (one {@code int[]} of offsets per state, and parallel
+ * arrays of targets and actions) in both directions, and labels are bitsets over the proposition ids.
+ * <p>
+ * The {@link TransitionSystem} methods are views over these arrays, so the facade algorithms keep
+ * working unchanged; the hot ones ({@code post}, {@code pre}, {@code reach}, {@code product}) detect
+ * this class and run on the ids directly. Mutators throw {@link UnsupportedOperationException}.
+ */
+public class CompactTransitionSystem<STATE, ACTION, ATOMIC_PROPOSITION> implements TransitionSystem<STATE, ACTION, ATOMIC_PROPOSITION> {
+
+    private String name;
+
+    private final List<STATE> states;
+    private final Map<STATE, Integer> stateIds;
+    private final List<ACTION> actions;
+    private final Map<ACTION, Integer> actionIds;
+    private final List<ATOMIC_PROPOSITION> atomic_propositions;
+    private final Map<ATOMIC_PROPOSITION, Integer> apIds;
+
+    private final BitSet initials;
+    private final BitSet[] labels;
+
+    // forward CSR: the edges of state s are outTarget/outAction[outStart[s] .. outStart[s+1])
+    private final int[] outStart;
+    private final int[] outTarget;
+    private final int[] outAction;
+    // backward CSR, same layout keyed by target
+    private final int[] inStart;
+    private final int[] inSource;
+    private final int[] inAction;
+
+    CompactTransitionSystem(String name, List<STATE> states, List<ACTION> actions, List<ATOMIC_PROPOSITION> atomic_propositions,
+                            BitSet initials, BitSet[] labels, int[] outStart, int[] outTarget, int[] outAction) {
+        this.name = name;
+        this.states = states;
+        this.stateIds = indexOf(states);
+        this.actions = actions;
+        this.actionIds = indexOf(actions);
+        this.atomic_propositions = atomic_propositions;
+        this.apIds = indexOf(atomic_propositions);
+        this.initials = initials;
+        this.labels = labels;
+        this.outStart = outStart;
+        this.outTarget = outTarget;
+        this.outAction = outAction;
+
+        int n = states.size();
+        int m = outTarget.length;
+        inStart = new int[n + 1];
+        inSource = new int[m];
+        inAction = new int[m];
+        for (int e = 0; e < m; e++)
+            inStart[outTarget[e] + 1]++;
+        for (int s = 0; s < n; s++)
+            inStart[s + 1] += inStart[s];
+        int[] fill = Arrays.copyOf(inStart, n);
+        for (int s = 0; s < n; s++) {
+            for (int e = outStart[s]; e < outStart[s + 1]; e++) {
+                int slot = fill[outTarget[e]]++;
+                inSource[slot] = s;
+                inAction[slot] = outAction[e];
+            }
+        }
+    }
+
+    /**
+     * Interns {@code ts} into a compact transition system. The source is not modified.
+     */
+    public static <S, A, P> CompactTransitionSystem<S, A, P> of(TransitionSystem<S, A, P> ts) {
+        if (ts instanceof CompactTransitionSystem)
+            return (CompactTransitionSystem<S, A, P>) ts;
+
+        List<S> states = new ArrayList<>(ts.getStates());
+        List<A> actions = new ArrayList<>(ts.getActions());
+        List<P> aps = new ArrayList<>(ts.getAtomicPropositions());
+        Map<S, Integer> stateIds = indexOf(states);
+        Map<A, Integer> actionIds = indexOf(actions);
+        Map<P, Integer> apIds = indexOf(aps);
+
+        int n = states.size();
+        BitSet initials = new BitSet(n);
+        for (S s : ts.getInitialStates())
+            initials.set(stateIds.get(s));
+
+        BitSet[] labels = new BitSet[n];
+        for (int s = 0; s < n; s++) {
+            labels[s] = new BitSet(aps.size());
+            for (P p : ts.getLabel(states.get(s)))
+                labels[s].set(apIds.get(p));
+        }
+
+        Set<Transition<S, A>> transitions = ts.getTransitions();
+        int[] outStart = new int[n + 1];
+        for (Transition<S, A> t : transitions)
+            outStart[stateIds.get(t.getFrom()) + 1]++;
+        for (int s = 0; s < n; s++)
+            outStart[s + 1] += outStart[s];
+        int[] outTarget = new int[transitions.size()];
+        int[] outAction = new int[transitions.size()];
+        int[] fill = Arrays.copyOf(outStart, n);
+        for (Transition<S, A> t : transitions) {
+            int slot = fill[stateIds.get(t.getFrom())]++;
+            outTarget[slot] = stateIds.get(t.getTo());
+            outAction[slot] = actionIds.get(t.getAction());
+        }
+
+        return new CompactTransitionSystem<>(ts.getName(), states, actions, aps, initials, labels, outStart, outTarget, outAction);
+    }
+
+    private static <T> Map<T, Integer> indexOf(List<T> items) {
+        Map<T, Integer> ids = new HashMap<>(items.size() * 2);
+        for (int i = 0; i < items.size(); i++)
+            ids.put(items.get(i), i);
+        return ids;
+    }
+
+    // id level access, used by the facade's fast paths
+
+    int stateCount() {
+        return states.size();
+    }
+
+    int transitionCount() {
+        return outTarget.length;
+    }
+
+    /**
+     * @return the id of {@code s}, or -1 if it is not a state of this system.
+     */
+    int stateId(Object s) {
+        Integer id = stateIds.get(s);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return the id of {@code a}, or -1 if it is not an action of this system.
+     */
+    int actionId(Object a) {
+        Integer id = actionIds.get(a);
+        return id == null ? -1 : id;
+    }
+
+    STATE state(int id) {
+        return states.get(id);
+    }
+
+    ACTION action(int id) {
+        return actions.get(id);
+    }
+
+    ATOMIC_PROPOSITION atomicProposition(int id) {
+        return atomic_propositions.get(id);
+    }
+
+    int atomicPropositionCount() {
+        return atomic_propositions.size();
+    }
+
+    int firstOut(int s) {
+        return outStart[s];
+    }
+
+    int endOut(int s) {
+        return outStart[s + 1];
+    }
+
+    int target(int edge) {
+        return outTarget[edge];
+    }
+
+    int outAction(int edge) {
+        return outAction[edge];
+    }
+
+    int firstIn(int s) {
+        return inStart[s];
+    }
+
+    int endIn(int s) {
+        return inStart[s + 1];
+    }
+
+    int source(int edge) {
+        return inSource[edge];
+    }
+
+    int inAction(int edge) {
+        return inAction[edge];
+    }
+
+    boolean isInitial(int s) {
+        return initials.get(s);
+    }
+
+    BitSet initialIds() {
+        return (BitSet) initials.clone();
+    }
+
+    /**
+     * @return the label of state {@code s} as a bitset over the proposition ids. Do not modify.
+     */
+    BitSet label(int s) {
+        return labels[s];
+    }
+
+    /**
+     * @return the ids of all states reachable from the initial states.
+     */
+    BitSet reachableIds() {
+        BitSet seen = initialIds();
+        int[] stack = new int[Math.max(1, seen.cardinality())];
+        int top = 0;
+        for (int s = seen.nextSetBit(0); s >= 0; s = seen.nextSetBit(s + 1))
+            stack[top++] = s;
+        while (top > 0) {
+            int s = stack[--top];
+            for (int e = outStart[s]; e < outStart[s + 1]; e++) {
+                int t = outTarget[e];
+                if (!seen.get(t)) {
+                    seen.set(t);
+                    if (top == stack.length)
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    stack[top++] = t;
+                }
+            }
+        }
+        return seen;
+    }
+
+    // TransitionSystem view
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public Set<ACTION> getActions() {
+        return new IdSet<>(actions, actionIds);
+    }
+
+    @Override
+    public Set<ATOMIC_PROPOSITION> getAtomicPropositions() {
+        return new IdSet<>(atomic_propositions, apIds);
+    }
+
+    @Override
+    public Set<STATE> getStates() {
+        return new IdSet<>(states, stateIds);
+    }
+
+    @Override
+    public Set<STATE> getInitialStates() {
+        return new BitView<>(initials, states, stateIds);
+    }
+
+    @Override
+    public Set<ATOMIC_PROPOSITION> getLabel(STATE s) {
+        int id = stateId(s);
+        if (id < 0)
+            throw new StateNotFoundException(s);
+        return new BitView<>(labels[id], atomic_propositions, apIds);
+    }
+
+    @Override
+    public Map<STATE, Set<ATOMIC_PROPOSITION>> getLabelingFunction() {
+        return new AbstractMap<STATE, Set<ATOMIC_PROPOSITION>>() {
+            @Override
+            public Set<ATOMIC_PROPOSITION> get(Object key) {
+                int id = stateId(key);
+                return id < 0 ? null : new BitView<>(labels[id], atomic_propositions, apIds);
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return stateId(key) >= 0;
+            }
+
+            @Override
+            public int size() {
+                return states.size();
+            }
+
+            @Override
+            public Set<Entry<STATE, Set<ATOMIC_PROPOSITION>>> entrySet() {
+                return new AbstractSet<Entry<STATE, Set<ATOMIC_PROPOSITION>>>() {
+                    @Override
+                    public Iterator<Entry<STATE, Set<ATOMIC_PROPOSITION>>> iterator() {
+                        return new Iterator<Entry<STATE, Set<ATOMIC_PROPOSITION>>>() {
+                            int next = 0;
+
+                            @Override
+                            public boolean hasNext() {
+                                return next < states.size();
+                            }
+
+                            @Override
+                            public Entry<STATE, Set<ATOMIC_PROPOSITION>> next() {
+                                if (!hasNext())
+                                    throw new NoSuchElementException();
+                                int id = next++;
+                                return new SimpleImmutableEntry<>(states.get(id), new BitView<>(labels[id], atomic_propositions, apIds));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return states.size();
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Set<Transition<STATE, ACTION>> getTransitions() {
+        return new AbstractSet<Transition<STATE, ACTION>>() {
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof Transition))
+                    return false;
+                Transition<?, ?> t = (Transition<?, ?>) o;
+                int from = stateId(t.getFrom());
+                int to = stateId(t.getTo());
+                int action = actionId(t.getAction());
+                if (from < 0 || to < 0 || action < 0)
+                    return false;
+                for (int e = outStart[from]; e < outStart[from + 1]; e++)
+                    if (outTarget[e] == to && outAction[e] == action)
+                        return true;
+                return false;
+            }
+
+            @Override
+            public Iterator<Transition<STATE, ACTION>> iterator() {
+                return new Iterator<Transition<STATE, ACTION>>() {
+                    int from = 0;
+                    int edge = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return edge < outTarget.length;
+                    }
+
+                    @Override
+                    public Transition<STATE, ACTION> next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        while (outStart[from + 1] <= edge)
+                            from++;
+                        Transition<STATE, ACTION> t = new Transition<>(states.get(from), actions.get(outAction[edge]), states.get(outTarget[edge]));
+                        edge++;
+                        return t;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return outTarget.length;
+            }
+        };
+    }
+
+    @Override
+    public void addAction(ACTION anAction) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setInitial(STATE aState, boolean isInitial) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addState(STATE state) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addTransition(Transition<STATE, ACTION> t) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addAtomicProposition(ATOMIC_PROPOSITION p) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addToLabel(STATE s, ATOMIC_PROPOSITION l) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeAction(ACTION action) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeAtomicProposition(ATOMIC_PROPOSITION p) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeLabel(STATE s, ATOMIC_PROPOSITION l) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeState(STATE state) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeTransition(Transition<STATE, ACTION> t) {
+        throw readOnly();
+    }
+
+    private UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Compact transition systems are read-only");
+    }
+
+    /**
+     * Read-only set over an interned list.
+     */
+    private static class IdSet<T> extends AbstractSet<T> {
+        private final List<T> items;
+        private final Map<T, Integer> ids;
+
+        IdSet(List<T> items, Map<T, Integer> ids) {
+            this.items = items;
+            this.ids = ids;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return ids.containsKey(o);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return Collections.unmodifiableList(items).iterator();
+        }
+
+        @Override
+        public int size() {
+            return items.size();
+        }
+    }
+
+    /**
+     * Read-only set over the members of an interned list whose ids are set in a bitset.
+     */
+    private static class BitView<T> extends AbstractSet<T> {
+        private final BitSet bits;
+        private final List<T> items;
+        private final Map<T, Integer> ids;
+
+        BitView(BitSet bits, List<T> items, Map<T, Integer> ids) {
+            this.bits = bits;
+            this.items = items;
+            this.ids = ids;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            Integer id = ids.get(o);
+            return id != null && bits.get(id);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                int next = bits.nextSetBit(0);
+
+                @Override
+                public boolean hasNext() {
+                    return next >= 0;
+                }
+
+                @Override
+                public T next() {
+                    if (next < 0)
+                        throw new NoSuchElementException();
+                    T item = items.get(next);
+                    next = bits.nextSetBit(next + 1);
+                    return item;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return bits.cardinality();
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.*;
+
+/**
+ * Compiles the common subset of NanoPromela conditions and actions into closures, so a string is
+ * parsed once instead of on every evaluation.
+ * <p>
+ * Supported: integer literals and variables, {@code + - * / %}, comparisons, {@code && || !},
+ * {@code true}/{@code false}, parentheses, {@code x := e}, {@code atomic{...}} of assignments and
+ * {@code skip}. Anything else - channels, function calls, and mixes of operators whose relative
+ * precedence in the parser's grammar we do not rely on ({@code &&} with {@code ||}, two different
+ * arithmetic operators, e.g. {@code x - 1 + 2}, unary minus before a binary operator) - is not compiled: the compile methods return
+ * {@code null}, and the caller uses the parser based definitions instead.
+ * <p>
+ * A compiled closure returns {@code null} when it can't decide on the given evaluation (an unbound or
+ * non integer variable, division by zero), again leaving it to the parser based definitions.
+ */
+class CompiledExpressions {
+
+    interface IntExpr {
+        Integer eval(Map<String, Object> eval);
+    }
+
+    interface BoolExpr {
+        Boolean eval(Map<String, Object> eval);
+    }
+
+    interface Effect {
+        Map<String, Object> apply(Map<String, Object> eval);
+    }
+
+    private CompiledExpressions() {
+    }
+
+    /**
+     * @return the compiled condition, or {@code null} if it is outside the supported subset.
+     */
+    static BoolExpr compileCondition(String condition) {
+        List<String> tokens = tokenize(condition);
+        if (tokens == null)
+            return null;
+        if (tokens.isEmpty())
+            return eval -> Boolean.TRUE;
+        Parser parser = new Parser(tokens);
+        BoolExpr expr = parser.parseBool();
+        return parser.atEnd() ? expr : null;
+    }
+
+    /**
+     * @return the compiled action, or {@code null} if it is outside the supported subset.
+     */
+    static Effect compileAction(String action) {
+        List<String> tokens = tokenize(action);
+        if (tokens == null || tokens.isEmpty())
+            return null;
+        Parser parser = new Parser(tokens);
+        Effect effect = parser.parseAction();
+        return parser.atEnd() ? effect : null;
+    }
+
+    /**
+     * @return the variables a condition or an action may read. Exact for the supported subset; for
+     * anything else (channel operations, function calls) every name in it, which over-approximates.
+     */
+    static Set<String> variablesRead(String text) {
+        Set<String> read = new HashSet<>();
+        List<String> tokens = tokenize(text);
+        if (tokens == null || compileAction(text) == null) {
+            read.addAll(names(text));
+            return read;
+        }
+        for (int i = 0; i < tokens.size(); i++)
+            if (isName(tokens.get(i)) && (i + 1 == tokens.size() || !tokens.get(i + 1).equals(":=")))
+                read.add(tokens.get(i));
+        return read;
+    }
+
+    /**
+     * @return the variables an action may write. Exact for the supported subset; for anything else
+     * every name in it, which over-approximates.
+     */
+    static Set<String> variablesWritten(String action) {
+        Set<String> written = new HashSet<>();
+        List<String> tokens = tokenize(action);
+        if (tokens == null || compileAction(action) == null) {
+            written.addAll(names(action));
+            return written;
+        }
+        for (int i = 0; i + 1 < tokens.size(); i++)
+            if (tokens.get(i + 1).equals(":="))
+                written.add(tokens.get(i));
+        return written;
+    }
+
+    // every identifier of the text, whatever the syntax around it
+    private static Set<String> names(String text) {
+        Set<String> names = new HashSet<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isLetter(c) || c == '_') {
+                int j = i;
+                while (j < text.length() && (Character.isLetterOrDigit(text.charAt(j)) || text.charAt(j) == '_'))
+                    j++;
+                if (isName(text.substring(i, j)))
+                    names.add(text.substring(i, j));
+                i = j;
+            } else if (Character.isDigit(c)) {
+                while (i < text.length() && Character.isLetterOrDigit(text.charAt(i)))
+                    i++;
+            } else {
+                i++;
+            }
+        }
+        return names;
+    }
+
+    private static final List<String> TWO_CHAR_OPERATORS = Arrays.asList(":=", "==", "!=", "<=", ">=", "&&", "||");
+    private static final String ONE_CHAR_OPERATORS = "()+-*/%<>!;{}";
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isLetter(c) || c == '_') {
+                int j = i;
+                while (j < text.length() && (Character.isLetterOrDigit(text.charAt(j)) || text.charAt(j) == '_'))
+                    j++;
+                tokens.add(text.substring(i, j));
+                i = j;
+            } else if (Character.isDigit(c)) {
+                int j = i;
+                while (j < text.length() && Character.isDigit(text.charAt(j)))
+                    j++;
+                tokens.add(text.substring(i, j));
+                i = j;
+            } else if (i + 1 < text.length() && TWO_CHAR_OPERATORS.contains(text.substring(i, i + 2))) {
+                tokens.add(text.substring(i, i + 2));
+                i += 2;
+            } else if (ONE_CHAR_OPERATORS.indexOf(c) >= 0) {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else {
+                return null;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isNumber(String token) {
+        return token != null && Character.isDigit(token.charAt(0));
+    }
+
+    private static boolean isName(String token) {
+        return token != null && (Character.isLetter(token.charAt(0)) || token.charAt(0) == '_')
+                && !token.equals("true") && !token.equals("false") && !token.equals("skip") && !token.equals("atomic");
+    }
+
+    private static boolean isRelational(String token) {
+        return "==".equals(token) || "!=".equals(token) || "<".equals(token) || ">".equals(token) || "<=".equals(token) || ">=".equals(token);
+    }
+
+    private static boolean isAdditive(String token) {
+        return "+".equals(token) || "-".equals(token);
+    }
+
+    private static boolean isMultiplicative(String token) {
+        return "*".equals(token) || "/".equals(token) || "%".equals(token);
+    }
+
+    private static class Parser {
+        private final List<String> tokens;
+        private int pos;
+
+        Parser(List<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        boolean atEnd() {
+            return pos == tokens.size();
+        }
+
+        private String peek() {
+            return pos < tokens.size() ? tokens.get(pos) : null;
+        }
+
+        private boolean accept(String token) {
+            if (token.equals(peek())) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        Effect parseAction() {
+            if (accept("skip"))
+                return eval -> eval;
+            List<String> names = new ArrayList<>();
+            List<IntExpr> values = new ArrayList<>();
+            if (accept("atomic")) {
+                if (!accept("{"))
+                    return null;
+                do {
+                    if (!parseAssignment(names, values))
+                        return null;
+                } while (accept(";"));
+                if (!accept("}"))
+                    return null;
+            } else if (!parseAssignment(names, values)) {
+                return null;
+            }
+            return eval -> {
+                // a Valuation stays one: each assignment makes a new one, as it is immutable
+                Map<String, Object> result = eval instanceof Valuation ? eval : new HashMap<>(eval);
+                for (int i = 0; i < names.size(); i++) {
+                    Integer value = values.get(i).eval(result);
+                    if (value == null)
+                        return null;
+                    if (result instanceof Valuation)
+                        result = ((Valuation) result).with(names.get(i), value);
+                    else
+                        result.put(names.get(i), value);
+                }
+                return result;
+            };
+        }
+
+        private boolean parseAssignment(List<String> names, List<IntExpr> values) {
+            String name = peek();
+            if (!isName(name))
+                return false;
+            pos++;
+            if (!accept(":="))
+                return false;
+            IntExpr value = parseInt();
+            if (value == null)
+                return false;
+            names.add(name);
+            values.add(value);
+            return true;
+        }
+
+        BoolExpr parseBool() {
+            BoolExpr left = parseBoolTerm();
+            String operator = null;
+            while (left != null && ("&&".equals(peek()) || "||".equals(peek()))) {
+                String next = tokens.get(pos++);
+                if (operator != null && !operator.equals(next))
+                    return null;
+                operator = next;
+                BoolExpr l = left;
+                BoolExpr r = parseBoolTerm();
+                if (r == null)
+                    return null;
+                // both sides are always evaluated, so an undecidable side falls back as a whole
+                left = operator.equals("&&")
+                        ? eval -> and(l.eval(eval), r.eval(eval))
+                        : eval -> or(l.eval(eval), r.eval(eval));
+            }
+            return left;
+        }
+
+        private BoolExpr parseBoolTerm() {
+            if (accept("!")) {
+                BoolExpr inner;
+                if (accept("true"))
+                    inner = eval -> Boolean.TRUE;
+                else if (accept("false"))
+                    inner = eval -> Boolean.FALSE;
+                else if ("(".equals(peek()))
+                    inner = parseParenthesizedBool();
+                else
+                    return null;
+                if (inner == null)
+                    return null;
+                return eval -> {
+                    Boolean value = inner.eval(eval);
+                    return value == null ? null : !value;
+                };
+            }
+            if (accept("true"))
+                return eval -> Boolean.TRUE;
+            if (accept("false"))
+                return eval -> Boolean.FALSE;
+            if ("(".equals(peek())) {
+                int start = pos;
+                BoolExpr inner = parseParenthesizedBool();
+                if (inner != null && !isRelational(peek()) && !isAdditive(peek()) && !isMultiplicative(peek()))
+                    return inner;
+                // an integer expression in parentheses, e.g. "(x + 1) == y"
+                pos = start;
+            }
+            IntExpr left = parseInt();
+            String operator = peek();
+            if (left == null || !isRelational(operator))
+                return null;
+            pos++;
+            IntExpr right = parseInt();
+            if (right == null || isRelational(peek()))
+                return null;
+            return eval -> {
+                Integer l = left.eval(eval);
+                Integer r = right.eval(eval);
+                if (l == null || r == null)
+                    return null;
+                switch (operator) {
+                    case "==":
+                        return l.intValue() == r.intValue();
+                    case "!=":
+                        return l.intValue() != r.intValue();
+                    case "<":
+                        return l < r;
+                    case ">":
+                        return l > r;
+                    case "<=":
+                        return l <= r;
+                    default:
+                        return l >= r;
+                }
+            };
+        }
+
+        private BoolExpr parseParenthesizedBool() {
+            if (!accept("("))
+                return null;
+            BoolExpr inner = parseBool();
+            return inner != null && accept(")") ? inner : null;
+        }
+
+        IntExpr parseInt() {
+            IntExpr left = parseIntTerm();
+            String first = null;
+            while (left != null && (isAdditive(peek()) || isMultiplicative(peek()))) {
+                String operator = tokens.get(pos++);
+                // a chain of one operator is left associative whatever the grammar, a mix may not be
+                if (first == null)
+                    first = operator;
+                else if (!first.equals(operator))
+                    return null;
+                IntExpr l = left;
+                IntExpr r = parseIntTerm();
+                if (r == null)
+                    return null;
+                left = eval -> arithmetic(operator, l.eval(eval), r.eval(eval));
+            }
+            return left;
+        }
+
+        private IntExpr parseIntTerm() {
+            String token = peek();
+            if (token == null)
+                return null;
+            if (accept("-")) {
+                IntExpr operand = parseIntAtom();
+                if (operand == null || isAdditive(peek()) || isMultiplicative(peek()))
+                    return null;
+                return eval -> {
+                    Integer value = operand.eval(eval);
+                    return value == null ? null : -value;
+                };
+            }
+            if (accept("(")) {
+                IntExpr inner = parseInt();
+                return inner != null && accept(")") ? inner : null;
+            }
+            return parseIntAtom();
+        }
+
+        private IntExpr parseIntAtom() {
+            String token = peek();
+            if (isNumber(token)) {
+                pos++;
+                Integer value;
+                try {
+                    value = Integer.valueOf(token);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                return eval -> value;
+            }
+            if (isName(token)) {
+                pos++;
+                if ("(".equals(peek()))
+                    return null; // a function, e.g. size(c)
+                return eval -> {
+                    Object value = eval.get(token);
+                    return value instanceof Integer ? (Integer) value : null;
+                };
+            }
+            return null;
+        }
+    }
+
+    private static Boolean and(Boolean l, Boolean r) {
+        return l == null || r == null ? null : l && r;
+    }
+
+    private static Boolean or(Boolean l, Boolean r) {
+        return l == null || r == null ? null : l || r;
+    }
+
+    private static Integer arithmetic(String operator, Integer l, Integer r) {
+        if (l == null || r == null)
+            return null;
+        switch (operator) {
+            case "+":
+                return l + r;
+            case "-":
+                return l - r;
+            case "*":
+                return l * r;
+            case "/":
+                return r == 0 ? null : l / r;
+            default:
+                return r == 0 ? null : l % r;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * The counter construction turning a generalized Buchi automaton with acceptance sets
+ * {@code F_0..F_k-1} into a plain one (Baier and Katoen, theorem 4.56). Copy {@code i} of a state waits
+ * for {@code F_i}: leaving a state of {@code F_i} moves on to copy {@code i+1 mod k}, and the accepting
+ * states are the states of {@code F_0} in copy 0. With no acceptance set every state is accepting.
+ * <p>
+ * Only the copies reachable from the initial states are built. The edge labels are passed through as
+ * they are, so the same construction serves concrete symbols and symbolic guards.
+ */
+final class Degeneralization {
+
+    /**
+     * Receives the automaton being built.
+     */
+    interface Builder<R, G> {
+        void addTransition(R from, G label, R to);
+
+        void setInitial(R state);
+
+        void setAccepting(R state);
+    }
+
+    private Degeneralization() {
+    }
+
+    /**
+     * @param delta the transitions leaving each state, by label.
+     * @param copy  names copy {@code i} of state {@code q} in the result.
+     */
+    static <Q, G, R> void degeneralize(Collection<Q> initialStates, Function<? super Q, Map<G, Set<Q>>> delta,
+                                       List<? extends Set<Q>> acceptance, BiFunction<? super Q, Integer, R> copy,
+                                       Builder<R, G> nba) {
+        int k = Math.max(1, acceptance.size());
+        Map<Pair<Q, Integer>, R> names = new HashMap<>();
+        Deque<Pair<Q, Integer>> frontier = new ArrayDeque<>();
+        Function<Pair<Q, Integer>, R> discover = state -> names.computeIfAbsent(state, s -> {
+            R name = copy.apply(s.first, s.second);
+            if (s.second == 0 && (acceptance.isEmpty() || acceptance.get(0).contains(s.first)))
+                nba.setAccepting(name);
+            frontier.push(s);
+            return name;
+        });
+
+        for (Q q : initialStates)
+            nba.setInitial(discover.apply(new Pair<>(q, 0)));
+
+        while (!frontier.isEmpty()) {
+            Pair<Q, Integer> state = frontier.pop();
+            R from = names.get(state);
+            int i = state.second;
+            int next = acceptance.isEmpty() || !acceptance.get(i).contains(state.first) ? i : (i + 1) % k;
+            for (Map.Entry<G, Set<Q>> edge : delta.apply(state.first).entrySet())
+                for (Q q : edge.getValue())
+                    nba.addTransition(from, edge.getKey(), discover.apply(new Pair<>(q, next)));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Action and AP determinism (Baier and Katoen, definition 2.5), in time linear in the size of the
+ * transition system: each state's outgoing transitions are looked at once, through the adjacency
+ * index, and compared through a hash set rather than pairwise. The scan stops at the first offending
+ * state, and may run on several threads.
+ */
+class DeterminismChecks {
+
+    private DeterminismChecks() {
+    }
+
+    /**
+     * @return whether {@code ts} has at most one initial state, and every state at most one successor
+     * per action.
+     */
+    static <S, A> boolean isActionDeterministic(TransitionSystem<S, A, ?> ts, int parallelism) {
+        if (ts.getInitialStates().size() > 1)
+            return false;
+        if (ts instanceof CompactTransitionSystem) {
+            CompactTransitionSystem<S, A, ?> cts = (CompactTransitionSystem<S, A, ?>) ts;
+            return allIds(cts.stateCount(), parallelism, s -> {
+                int[] actions = new int[cts.endOut(s) - cts.firstOut(s)];
+                for (int e = cts.firstOut(s); e < cts.endOut(s); e++)
+                    actions[e - cts.firstOut(s)] = cts.outAction(e);
+                Arrays.sort(actions);
+                for (int i = 1; i < actions.length; i++)
+                    if (actions[i] == actions[i - 1])
+                        return false;
+                return true;
+            });
+        }
+        Adjacency<S, A> adjacency = new Adjacency<>(ts);
+        return all(ts.getStates(), parallelism, s -> {
+            Set<A> actions = new HashSet<>();
+            for (Transition<S, A> t : adjacency.outgoing(s))
+                if (!actions.add(t.getAction()))
+                    return false;
+            return true;
+        });
+    }
+
+    /**
+     * @return whether {@code ts} has at most one initial state, and no state two different successors
+     * with the same label.
+     */
+    static <S, A, P> boolean isAPDeterministic(TransitionSystem<S, A, P> ts, int parallelism) {
+        if (ts.getInitialStates().size() > 1)
+            return false;
+        if (ts instanceof CompactTransitionSystem) {
+            CompactTransitionSystem<S, A, P> cts = (CompactTransitionSystem<S, A, P>) ts;
+            return allIds(cts.stateCount(), parallelism, s -> {
+                Map<BitSet, Integer> successorByLabel = new HashMap<>();
+                for (int e = cts.firstOut(s); e < cts.endOut(s); e++) {
+                    Integer other = successorByLabel.putIfAbsent(cts.label(cts.target(e)), cts.target(e));
+                    if (other != null && other != cts.target(e))
+                        return false;
+                }
+                return true;
+            });
+        }
+        Adjacency<S, A> adjacency = new Adjacency<>(ts);
+        return all(ts.getStates(), parallelism, s -> {
+            Map<Set<P>, S> successorByLabel = new HashMap<>();
+            for (Transition<S, A> t : adjacency.outgoing(s)) {
+                S other = successorByLabel.putIfAbsent(ts.getLabel(t.getTo()), t.getTo());
+                if (other != null && !other.equals(t.getTo()))
+                    return false;
+            }
+            return true;
+        });
+    }
+
+    private static <S> boolean all(Set<S> states, int parallelism, Predicate<S> check) {
+        if (parallelism <= 1) {
+            for (S s : states)
+                if (!check.test(s))
+                    return false;
+            return true;
+        }
+        return inPool(parallelism, () -> states.parallelStream().allMatch(check));
+    }
+
+    private static boolean allIds(int count, int parallelism, IntPredicate check) {
+        if (parallelism <= 1) {
+            for (int s = 0; s < count; s++)
+                if (!check.test(s))
+                    return false;
+            return true;
+        }
+        return inPool(parallelism, () -> IntStream.range(0, count).parallel().allMatch(check));
+    }
+
+    private static boolean inPool(int parallelism, Callable<Boolean> scan) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(scan).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Determinism check was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
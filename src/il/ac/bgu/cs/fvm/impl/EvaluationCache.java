@@ -0,0 +1,109 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.programgraph.ActionDef;
+import il.ac.bgu.cs.fvm.programgraph.ConditionDef;
+import il.ac.bgu.cs.fvm.programgraph.ParserBasedActDef;
+import il.ac.bgu.cs.fvm.programgraph.ParserBasedCondDef;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Evaluates the conditions and actions of one program graph (or channel system) against a set of
+ * definitions, parsing each distinct string only once.
+ * <p>
+ * Where a string is handled by a {@link ParserBasedCondDef} or {@link ParserBasedActDef}, and is in
+ * the subset {@link CompiledExpressions} understands, the compiled form is used; everything else goes
+ * to the definitions themselves, so the results are the same as calling them directly. The definition
+ * matching each action is also looked up once. Thread safe. With assertions enabled, every compiled
+ * result is checked against the parser based definition it stands for.
+ * <p>
+ * Evaluations of integer variables are kept as {@link Valuation}s, laid out by a {@link VariableLayout}
+ * table of their own: every evaluation an effect returns is compacted, and compiled actions update a
+ * {@code Valuation} without going through a {@code HashMap}.
+ */
+class EvaluationCache {
+
+    private final Set<ActionDef> actionDefs;
+    private final Set<ConditionDef> conditionDefs;
+
+    private final Map<String, Optional<CompiledExpressions.BoolExpr>> conditions = new ConcurrentHashMap<>();
+    private final Map<Object, Optional<CompiledExpressions.Effect>> actions = new ConcurrentHashMap<>();
+    private final Map<Object, Optional<ActionDef>> matchingDefs = new ConcurrentHashMap<>();
+    private final VariableLayout.Table layouts = new VariableLayout.Table();
+
+    EvaluationCache(Set<ActionDef> actionDefs, Set<ConditionDef> conditionDefs) {
+        this.actionDefs = actionDefs;
+        this.conditionDefs = conditionDefs;
+    }
+
+    /**
+     * Same as {@link ConditionDef#evaluate(Set, Map, String)} over the condition definitions.
+     */
+    boolean evaluate(Map<String, Object> eval, String condition) {
+        if (condition == null)
+            return ConditionDef.evaluate(conditionDefs, eval, condition);
+        CompiledExpressions.BoolExpr compiled = conditions
+                .computeIfAbsent(condition, c -> Optional.ofNullable(CompiledExpressions.compileCondition(c)))
+                .orElse(null);
+        for (ConditionDef def : conditionDefs) {
+            if (compiled != null && def.getClass() == ParserBasedCondDef.class) {
+                Boolean value = compiled.eval(eval);
+                if (value != null) {
+                    assert value == def.evaluate(eval, condition) : "compiled '" + condition + "' disagrees with the parser on " + eval;
+                    if (value)
+                        return true;
+                    continue;
+                }
+            }
+            if (def.evaluate(eval, condition))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Applies the first action definition matching {@code action}.
+     *
+     * @return the new evaluation, or {@code eval} itself if no definition matches.
+     */
+    Map<String, Object> effect(Map<String, Object> eval, Object action) {
+        if (action == null)
+            return eval;
+        ActionDef def = matchingDefs.computeIfAbsent(action, this::matchingDef).orElse(null);
+        return def == null ? eval : effect(def, eval, action);
+    }
+
+    /**
+     * Same as {@code def.effect(eval, action)}.
+     */
+    Map<String, Object> effect(ActionDef def, Map<String, Object> eval, Object action) {
+        if (action != null && def.getClass() == ParserBasedActDef.class) {
+            CompiledExpressions.Effect compiled = actions
+                    .computeIfAbsent(action, a -> Optional.ofNullable(CompiledExpressions.compileAction(a.toString())))
+                    .orElse(null);
+            if (compiled != null) {
+                Map<String, Object> result = compiled.apply(eval);
+                if (result != null) {
+                    assert result.equals(def.effect(eval, action)) : "compiled '" + action + "' disagrees with the parser on " + eval;
+                    return compact(result);
+                }
+            }
+        }
+        return compact(def.effect(eval, action));
+    }
+
+    /**
+     * @return {@code eval} as a {@link Valuation}, if its values are all integers.
+     */
+    Map<String, Object> compact(Map<String, Object> eval) {
+        return layouts.compact(eval);
+    }
+
+    private Optional<ActionDef> matchingDef(Object action) {
+        for (ActionDef def : actionDefs)
+            if (def.isMatchingAction(action))
+                return Optional.of(def);
+        return Optional.empty();
+    }
+}
@@ -4,8 +4,6 @@ import il.ac.bgu.cs.fvm.FvmFacade;
 import il.ac.bgu.cs.fvm.automata.Automaton;
 import il.ac.bgu.cs.fvm.automata.MultiColorAutomaton;
 import il.ac.bgu.cs.fvm.channelsystem.ChannelSystem;
-import il.ac.bgu.cs.fvm.channelsystem.InterleavingActDef;
-import il.ac.bgu.cs.fvm.channelsystem.ParserBasedInterleavingActDef;
 import il.ac.bgu.cs.fvm.circuits.Circuit;
 import il.ac.bgu.cs.fvm.exceptions.ActionNotFoundException;
 import il.ac.bgu.cs.fvm.exceptions.StateNotFoundException;
@@ -17,6 +15,7 @@ import il.ac.bgu.cs.fvm.transitionsystem.AlternatingSequence;
 import il.ac.bgu.cs.fvm.transitionsystem.Transition;
 import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
 import il.ac.bgu.cs.fvm.util.Pair;
+import il.ac.bgu.cs.fvm.util.Util;
 import il.ac.bgu.cs.fvm.verification.VerificationFailed;
 import il.ac.bgu.cs.fvm.verification.VerificationResult;
 import il.ac.bgu.cs.fvm.verification.VerificationSucceeded;
@@ -25,8 +24,13 @@ import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.RuleContext;
 import org.antlr.v4.runtime.tree.TerminalNodeImpl;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * Implement the methods in this class. You may add additional classes as you
@@ -35,6 +39,55 @@ import java.util.*;
  */
 public class FvmFacadeImpl implements FvmFacade {
 
+    private int parallelism = 1;
+    private Supplier<? extends StateStore> stateStores = HeapStateStore::new;
+    private boolean exactStores = true;
+    private final LtlTranslator ltlTranslator = new LtlTranslator();
+
+    /**
+     * Sets the number of threads used to unfold program graphs in
+     * {@link #transitionSystemFromProgramGraph(ProgramGraph, Set, Set)}, by the determinism checks and by
+     * {@link #traceChecker}.
+     * With more than one thread, the action and condition definitions are evaluated concurrently and must
+     * be thread safe. Defaults to 1 (sequential).
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets where state space explorations keep the states they have visited: a new store is taken from
+     * {@code stateStores} for each exploration, and closed when it ends. Defaults to
+     * {@link HeapStateStore}; {@code MappedStateStore::new} keeps them in memory mapped files instead,
+     * and a {@link BitStateStore} keeps only hash bits, for fast but incomplete bug hunting.
+     * <p>
+     * Only {@link #verifyAnOmegaRegularProperty} keeps its states nowhere else, so only it gains from
+     * moving them off the heap. Unfolding program graphs and channel systems and {@link #product} build
+     * a transition system holding every state anyway: they use an approximate store, but in place of an
+     * exact one they use the states of the system they build.
+     * <p>
+     * One store is taken from {@code stateStores} here, and closed, to find out whether they are exact;
+     * {@link #setStateStore(Supplier, boolean)} saves that.
+     */
+    public void setStateStore(Supplier<? extends StateStore> stateStores) {
+        boolean exact;
+        try (StateStore probe = stateStores.get()) {
+            exact = probe.isExact();
+        }
+        setStateStore(stateStores, exact);
+    }
+
+    /**
+     * Same as {@link #setStateStore(Supplier)}, for stores known to be {@link StateStore#isExact() exact}
+     * or not.
+     */
+    public void setStateStore(Supplier<? extends StateStore> stateStores, boolean exact) {
+        this.stateStores = Objects.requireNonNull(stateStores);
+        this.exactStores = exact;
+    }
+
     @Override
     public <S, A, P> TransitionSystem<S, A, P> createTransitionSystem() {
         return new TransitionSystemImpl<>();
@@ -42,95 +95,47 @@ public class FvmFacadeImpl implements FvmFacade {
 
     @Override
     public <S, A, P> boolean isActionDeterministic(TransitionSystem<S, A, P> ts) {
-        if (ts.getInitialStates().size() > 1) return false;
-        for (S s : ts.getStates()) {
-            Set<A> actions = new HashSet<>();
-            for (Transition<S, A> t : ts.getTransitions())
-                if (t.getFrom().equals(s)) {
-                    if (actions.contains(t.getAction()))
-                        return false;
-                    actions.add(t.getAction());
-                }
-        }
-        return true;
+        return DeterminismChecks.isActionDeterministic(ts, parallelism);
     }
 
     @Override
     public <S, A, P> boolean isAPDeterministic(TransitionSystem<S, A, P> ts) {
-        if (ts.getInitialStates().size() > 1) return false;
-
-        for (S s : ts.getStates()) {
-            List<S> toStates = new ArrayList<>();
-
-            // after this 'for' we have all the 'to states' of 's'
-            for (Transition<S, A> t : ts.getTransitions())
-                if (t.getFrom().equals(s))
-                    toStates.add(t.getTo());
-
-            // here we are matching each 'toState`s' AP with one another to see if there are 2 with the same ap
-            for (int i = 0; i < toStates.size() - 1; i++) {
-                Set<P> ap = ts.getLabel(toStates.get(i));
-                for (int j = i + 1; j < toStates.size(); j++) {
-                    Set<P> ap2 = ts.getLabel(toStates.get(j));
-                    for (P p : ap2) {
-                        if (ap.contains(p))
-                            return false;
-                    }
-                    //2 states with empty ap
-                    if (ap2.size() == 0 && ap.size() == 0)
-                        return false;
-                }
-            }
-        }
-        return true;
+        return DeterminismChecks.isAPDeterministic(ts, parallelism);
     }
 
     @Override
     public <S, A, P> boolean isExecution(TransitionSystem<S, A, P> ts, AlternatingSequence<S, A> e) {
-        AlternatingSequence<S, A> next;
-
-        if (!ts.getInitialStates().contains(e.head())) {
-            return false;
-        }
-
-        next = compareASandTS(ts, e);
-
-        if (next == null) {
+        // before the replay, so a sequence that doesn't start initially is rejected without checking its states and actions
+        if (!ts.getInitialStates().contains(e.head()))
             return false;
-        }
-        return post(ts, next.head()).size() == 0;
+        return check_trace(ts, e).isExecution();
     }
 
-
     @Override
     public <S, A, P> boolean isExecutionFragment(TransitionSystem<S, A, P> ts, AlternatingSequence<S, A> e) {
-        AlternatingSequence<S, A> next;
-        next = compareASandTS(ts, e);
-        return next != null;
+        return check_trace(ts, e).isExecutionFragment();
     }
 
     @Override
     public <S, A, P> boolean isInitialExecutionFragment(TransitionSystem<S, A, P> ts, AlternatingSequence<S, A> e) {
-        AlternatingSequence<S, A> next;
-
-        if (!ts.getInitialStates().contains(e.head())) {
+        // as in isExecution
+        if (!ts.getInitialStates().contains(e.head()))
             return false;
-        }
-
-        next = compareASandTS(ts, e);
-        return next != null;
+        return check_trace(ts, e).isInitialExecutionFragment();
     }
 
     @Override
     public <S, A, P> boolean isMaximalExecutionFragment(TransitionSystem<S, A, P> ts, AlternatingSequence<S, A> e) {
-        AlternatingSequence<S, A> next;
-
-        next = compareASandTS(ts, e);
+        return check_trace(ts, e).isMaximalExecutionFragment();
+    }
 
-        if (next == null) {
-            return false;
-        }
-        return post(ts, next.head()).size() == 0;
+    /**
+     * Prepares {@code ts} for replaying many sequences against it, e.g. recorded traces, possibly on
+     * several threads (see {@link #setParallelism(int)}). {@code ts} must not change while the checker is
+     * in use.
+     */
+    public <S, A> TraceChecker<S, A> traceChecker(TransitionSystem<S, A, ?> ts) {
+        return new TraceChecker<>(ts, parallelism);
     }
 
     @Override
@@ -138,6 +143,13 @@ public class FvmFacadeImpl implements FvmFacade {
         if (!ts.getStates().contains(s)) {
             throw new StateNotFoundException(s);
         }
+        if (ts instanceof TransitionSystemImpl)
+            return ((TransitionSystemImpl<S, A, ?>) ts).outgoing(s).isEmpty();
+        if (ts instanceof CompactTransitionSystem) {
+            CompactTransitionSystem<S, A, ?> cts = (CompactTransitionSystem<S, A, ?>) ts;
+            int id = cts.stateId(s);
+            return cts.firstOut(id) == cts.endOut(id);
+        }
         for (Transition<S, A> transition : ts.getTransitions())
             if (transition.getFrom().equals(s))
                 return false;
@@ -149,6 +161,18 @@ public class FvmFacadeImpl implements FvmFacade {
         if (!ts.getStates().contains(s))
             throw new StateNotFoundException(s);
         Set<S> post_states = new HashSet<>();
+        if (ts instanceof TransitionSystemImpl) {
+            for (Transition<S, ?> transition : ((TransitionSystemImpl<S, ?, ?>) ts).outgoing(s))
+                post_states.add(transition.getTo());
+            return post_states;
+        }
+        if (ts instanceof CompactTransitionSystem) {
+            CompactTransitionSystem<S, ?, ?> cts = (CompactTransitionSystem<S, ?, ?>) ts;
+            int id = cts.stateId(s);
+            for (int e = cts.firstOut(id); e < cts.endOut(id); e++)
+                post_states.add(cts.state(cts.target(e)));
+            return post_states;
+        }
         for (Transition<S, ?> transition : ts.getTransitions()) {
             if (transition.getFrom().equals(s))
                 post_states.add(transition.getTo());
@@ -158,16 +182,25 @@ public class FvmFacadeImpl implements FvmFacade {
 
     @Override
     public <S> Set<S> post(TransitionSystem<S, ?, ?> ts, Set<S> c) {
-        Set<S> post_states = new HashSet<>();
-        for (S state : c) {
-            post_states.addAll(post(ts, state));
-        }
-        return post_states;
+        require_states(ts, c);
+        return new Reachability<>(ts).image(c);
     }
 
     @Override
     public <S, A> Set<S> post(TransitionSystem<S, A, ?> ts, S s, A a) {
+        if (ts instanceof TransitionSystemImpl)
+            return new HashSet<>(((TransitionSystemImpl<S, A, ?>) ts).post(s, a));
         Set<S> post_states = new HashSet<>();
+        if (ts instanceof CompactTransitionSystem) {
+            CompactTransitionSystem<S, A, ?> cts = (CompactTransitionSystem<S, A, ?>) ts;
+            int id = cts.stateId(s);
+            int action = cts.actionId(a);
+            if (id >= 0 && action >= 0)
+                for (int e = cts.firstOut(id); e < cts.endOut(id); e++)
+                    if (cts.outAction(e) == action)
+                        post_states.add(cts.state(cts.target(e)));
+            return post_states;
+        }
         for (Transition<S, A> transition : ts.getTransitions()) {
             if (transition.getFrom().equals(s) && transition.getAction().equals(a))
                 post_states.add(transition.getTo());
@@ -189,6 +222,18 @@ public class FvmFacadeImpl implements FvmFacade {
         if (!ts.getStates().contains(s))
             throw new StateNotFoundException(s);
         Set<S> pre_states = new HashSet<>();
+        if (ts instanceof TransitionSystemImpl) {
+            for (Transition<S, ?> transition : ((TransitionSystemImpl<S, ?, ?>) ts).incoming(s))
+                pre_states.add(transition.getFrom());
+            return pre_states;
+        }
+        if (ts instanceof CompactTransitionSystem) {
+            CompactTransitionSystem<S, ?, ?> cts = (CompactTransitionSystem<S, ?, ?>) ts;
+            int id = cts.stateId(s);
+            for (int e = cts.firstIn(id); e < cts.endIn(id); e++)
+                pre_states.add(cts.state(cts.source(e)));
+            return pre_states;
+        }
         for (Transition<S, ?> transition : ts.getTransitions()) {
             if (transition.getTo().equals(s))
                 pre_states.add(transition.getFrom());
@@ -198,16 +243,25 @@ public class FvmFacadeImpl implements FvmFacade {
 
     @Override
     public <S> Set<S> pre(TransitionSystem<S, ?, ?> ts, Set<S> c) {
-        Set<S> pre_states = new HashSet<>();
-        for (S state : c) {
-            pre_states.addAll(pre(ts, state));
-        }
-        return pre_states;
+        require_states(ts, c);
+        return new Reachability<>(ts).preImage(c);
     }
 
     @Override
     public <S, A> Set<S> pre(TransitionSystem<S, A, ?> ts, S s, A a) {
+        if (ts instanceof TransitionSystemImpl)
+            return new HashSet<>(((TransitionSystemImpl<S, A, ?>) ts).pre(s, a));
         Set<S> pre_states = new HashSet<>();
+        if (ts instanceof CompactTransitionSystem) {
+            CompactTransitionSystem<S, A, ?> cts = (CompactTransitionSystem<S, A, ?>) ts;
+            int id = cts.stateId(s);
+            int action = cts.actionId(a);
+            if (id >= 0 && action >= 0)
+                for (int e = cts.firstIn(id); e < cts.endIn(id); e++)
+                    if (cts.inAction(e) == action)
+                        pre_states.add(cts.state(cts.source(e)));
+            return pre_states;
+        }
         for (Transition<S, ?> transition : ts.getTransitions()) {
             if (transition.getTo().equals(s) && transition.getAction().equals(a))
                 pre_states.add(transition.getFrom());
@@ -227,63 +281,161 @@ public class FvmFacadeImpl implements FvmFacade {
     @Override
     public <S, A> Set<S> reach(TransitionSystem<S, A, ?> ts) {
         Set<S> reachableStates = new HashSet<>();
-        Set<S> currentlyDiscovering = new HashSet<>();
-        Stack<S> workStack = new Stack<>();
+        if (ts instanceof CompactTransitionSystem) {
+            CompactTransitionSystem<S, A, ?> cts = (CompactTransitionSystem<S, A, ?>) ts;
+            BitSet reachable = cts.reachableIds();
+            for (int id = reachable.nextSetBit(0); id >= 0; id = reachable.nextSetBit(id + 1))
+                reachableStates.add(cts.state(id));
+            return reachableStates;
+        }
+        return new Reachability<>(ts).forward(ts.getInitialStates());
+    }
 
-        for (S state : ts.getInitialStates()) {
-            workStack.push(state);
-            currentlyDiscovering.add(state);
-            while (!workStack.empty()) {
-                S currState = workStack.pop();
-                reachableStates.add(currState);
-                currentlyDiscovering.remove(currState);
-                Set<S> nextStates = post(ts, currState);
-                for (S nextState : nextStates) {
-                    if (currentlyDiscovering.contains(nextState) || reachableStates.contains(nextState)) {
-                        continue;
-                    }
-                    workStack.push(nextState);
-                }
-            }
-        }
+    /**
+     * @return the states of {@code ts} from which some state of {@code targets} can be reached, including
+     * {@code targets} themselves.
+     */
+    public <S> Set<S> reachBackward(TransitionSystem<S, ?, ?> ts, Set<S> targets) {
+        require_states(ts, targets);
+        return new Reachability<>(ts).backward(targets);
+    }
 
-        return reachableStates;
+    /**
+     * Whether some state of {@code targets} is reachable from an initial state of {@code ts}, e.g. whether
+     * a safety property can be violated. Searches forward from the initial states and backward from
+     * {@code targets} together, and stops as soon as they meet, so a reachable target is usually found
+     * without exploring the whole system.
+     */
+    public <S> boolean canReach(TransitionSystem<S, ?, ?> ts, Set<S> targets) {
+        require_states(ts, targets);
+        return new Reachability<>(ts).canReach(ts.getInitialStates(), targets);
     }
 
-    @Override
-    public <S1, S2, A, P> TransitionSystem<Pair<S1, S2>, A, P> interleave(TransitionSystem<S1, A, P> ts1, TransitionSystem<S2, A, P> ts2) {
+    /**
+     * Same as {@link #canReach(TransitionSystem, Set)}, with the targets given by their labels, e.g.
+     * {@code label -> label.containsAll(set("crit1", "crit2"))}.
+     */
+    public <S, P> boolean canReach(TransitionSystem<S, ?, P> ts, Predicate<? super Set<P>> targetLabel) {
+        Set<S> targets = new HashSet<>();
+        for (S state : ts.getStates())
+            if (targetLabel.test(ts.getLabel(state)))
+                targets.add(state);
+        return canReach(ts, targets);
+    }
+
+    /**
+     * Decomposes {@code ts} into its strongly connected components, in linear time. On a
+     * {@link #product} with a Buchi automaton, {@code hasAcceptingCycle(s -> accepting.contains(s.second))}
+     * tells whether the automaton accepts some path of the system.
+     */
+    public <S> StronglyConnectedComponents<S> stronglyConnectedComponents(TransitionSystem<S, ?, ?> ts) {
+        return new StronglyConnectedComponents<>(ts);
+    }
+
+    private <S> void require_states(TransitionSystem<S, ?, ?> ts, Set<S> c) {
+        for (S state : c)
+            if (!ts.getStates().contains(state))
+                throw new StateNotFoundException(state);
+    }
 
-        TransitionSystem<Pair<S1, S2>, A, P> interleaveTransitionSystem = interleave_all_init_except_transition_and_name(ts1, ts2);
+    /**
+     * Removes the states of {@code ts} that can't be reached from its initial states, along with their
+     * labels and transitions. Our own transition systems are rebuilt in one linear pass; any other is
+     * pruned through its API, visiting its transitions once.
+     *
+     * @throws IllegalArgumentException if {@code ts} is a {@link CompactTransitionSystem}, such as
+     * {@link #readTransitionSystem} returns: it is read only.
+     */
+    public <S, A, P> void removeUnreachableStates(TransitionSystem<S, A, P> ts) {
+        if (ts instanceof CompactTransitionSystem)
+            throw new IllegalArgumentException("A CompactTransitionSystem is read only, its unreachable states can't be removed");
+        Set<S> reachable = reach(ts);
+        if (ts instanceof TransitionSystemImpl) {
+            ((TransitionSystemImpl<S, A, P>) ts).retainStates(reachable);
+            return;
+        }
 
-        // init transitions
-        Set<A> emptyHandShakeActionsSet = new HashSet<>();
-        interleave_initTransitionFunction_handShakingActions(ts1, ts2, interleaveTransitionSystem, emptyHandShakeActionsSet);
+        List<Transition<S, A>> dead_transitions = new ArrayList<>();
+        for (Transition<S, A> transition : ts.getTransitions())
+            if (!reachable.contains(transition.getFrom()) || !reachable.contains(transition.getTo()))
+                dead_transitions.add(transition);
+        for (Transition<S, A> transition : dead_transitions)
+            ts.removeTransition(transition);
 
-        // init name
-        interleaveTransitionSystem.setName(ts1.getName() + " ||| " + ts2.getName());
+        List<S> dead_states = new ArrayList<>();
+        for (S state : ts.getStates())
+            if (!reachable.contains(state))
+                dead_states.add(state);
+        for (S state : dead_states) {
+            for (P ap : new ArrayList<>(ts.getLabel(state)))
+                ts.removeLabel(state, ap);
+            ts.removeState(state);
+        }
+    }
+
+    /**
+     * Saves {@code ts} in a compact binary format, to be loaded again with {@link #readTransitionSystem}.
+     * States, actions and propositions may be strings, numbers, booleans, {@code Pair}s, lists, sets and maps.
+     */
+    public void writeTransitionSystem(TransitionSystem<?, ?, ?> ts, Path file) throws IOException {
+        TransitionSystemCodec.write(ts, file);
+    }
 
-        remove_unreachable(interleaveTransitionSystem);
+    /**
+     * Loads a transition system saved by {@link #writeTransitionSystem}. The file is memory mapped.
+     */
+    public <S, A, P> TransitionSystem<S, A, P> readTransitionSystem(Path file) throws IOException {
+        return TransitionSystemCodec.read(file);
+    }
 
-        return interleaveTransitionSystem;
+    @Override
+    public <S1, S2, A, P> TransitionSystem<Pair<S1, S2>, A, P> interleave(TransitionSystem<S1, A, P> ts1, TransitionSystem<S2, A, P> ts2) {
+        return new Interleaving<>(Arrays.asList(ts1, ts2), Collections.<A>emptySet())
+                .build(ts1.getName() + " ||| " + ts2.getName(), FvmFacadeImpl::<S1, S2>asPair);
     }
 
 
     @Override
     public <S1, S2, A, P> TransitionSystem<Pair<S1, S2>, A, P> interleave
             (TransitionSystem<S1, A, P> ts1, TransitionSystem<S2, A, P> ts2, Set<A> handShakingActions) {
+        return new Interleaving<>(Arrays.asList(ts1, ts2), handShakingActions)
+                .build(ts1.getName() + " |||h " + ts2.getName(), FvmFacadeImpl::<S1, S2>asPair);
+    }
 
+    /**
+     * Interleaves any number of transition systems at once, {@code TS1 ||| ... ||| TSn}. Only the states
+     * reachable from {@code I1 x ... x In} are built.
+     *
+     * @return a transition system whose states hold one state per component, in order.
+     */
+    public <S, A, P> TransitionSystem<List<S>, A, P> interleave(List<? extends TransitionSystem<? extends S, A, P>> tss) {
+        List<String> names = new ArrayList<>();
+        for (TransitionSystem<? extends S, A, P> ts : tss)
+            names.add(ts.getName());
+        return new Interleaving<>(tss, Collections.<A>emptySet())
+                .build(String.join(" ||| ", names), FvmFacadeImpl::<S>asList);
+    }
 
-        TransitionSystem<Pair<S1, S2>, A, P> interleaveTransitionSystem = interleave_all_init_except_transition_and_name(ts1, ts2);
-
-        // init transitions
-        interleave_initTransitionFunction_handShakingActions(ts1, ts2, interleaveTransitionSystem, handShakingActions);
-
-        // init name
-        interleaveTransitionSystem.setName(ts1.getName() + " |||h " + ts2.getName());
+    /**
+     * Like {@link #interleave(List)}, where an action in {@code handShakingActions} moves all the
+     * components together, and only when every one of them can take it.
+     */
+    public <S, A, P> TransitionSystem<List<S>, A, P> interleave(List<? extends TransitionSystem<? extends S, A, P>> tss, Set<A> handShakingActions) {
+        List<String> names = new ArrayList<>();
+        for (TransitionSystem<? extends S, A, P> ts : tss)
+            names.add(ts.getName());
+        return new Interleaving<>(tss, handShakingActions)
+                .build(String.join(" |||h ", names), FvmFacadeImpl::<S>asList);
+    }
 
-        remove_unreachable(interleaveTransitionSystem);
+    @SuppressWarnings("unchecked")
+    private static <S1, S2> Pair<S1, S2> asPair(List<Object> tuple) {
+        return new Pair<>((S1) tuple.get(0), (S2) tuple.get(1));
+    }
 
-        return interleaveTransitionSystem;
+    @SuppressWarnings("unchecked")
+    private static <S> List<S> asList(List<Object> tuple) {
+        return Collections.unmodifiableList((List<S>) tuple);
     }
 
 
@@ -295,210 +447,92 @@ public class FvmFacadeImpl implements FvmFacade {
     @Override
     public <L1, L2, A> ProgramGraph<Pair<L1, L2>, A> interleave
             (ProgramGraph<L1, A> pg1, ProgramGraph<L2, A> pg2) {
-        ProgramGraph<Pair<L1, L2>, A> interleavedPG = new ProgramGraphImpl<>();
-        interleavedPG.setName(pg1.getName() + "_interleaved_with_" + pg2.getName());
-
-
-        // Adding States
-        for (L1 pg1_loc : pg1.getLocations()) {
-            for (L2 pg2_loc : pg2.getLocations()) {
-                interleavedPG.addLocation(new Pair<>(pg1_loc, pg2_loc));
-            }
-        }
-
-        // Setting Initial States
-        for (Pair<L1, L2> pg_loc : interleavedPG.getLocations()) {
-            if (pg1.getInitialLocations().contains(pg_loc.first) && pg2.getInitialLocations().contains(pg_loc.second)) {
-                interleavedPG.setInitial(pg_loc, true);
-            }
-        }
-
-        // Adding Initialization Lists
-        for (List<String> pg1_initialization : pg1.getInitalizations()) {
-            for (List<String> pg2_initialization : pg2.getInitalizations()) {
-                List<String> all = new ArrayList<>(pg1_initialization);
-                all.addAll(pg2_initialization);
-                interleavedPG.addInitalization(all);
-            }
-        }
-
-        // Adding Transitions From PG1
-        for (PGTransition<L1, A> pg1_trans : pg1.getTransitions()) {
-            for (Pair<L1, L2> pg_location1 : interleavedPG.getLocations()) {
-                if (pg_location1.first.equals(pg1_trans.getFrom())) {
-                    for (Pair<L1, L2> pg_location2 : interleavedPG.getLocations()) {
-                        if (pg_location2.first.equals(pg1_trans.getTo()) && pg_location2.second.equals(pg_location1.second)) {
-                            interleavedPG.addTransition(new PGTransition<>(pg_location1, pg1_trans.getCondition(), pg1_trans.getAction(), pg_location2));
-                        }
-                    }
-                }
-            }
-        }
-        // Adding Transitions From PG2
-        for (PGTransition<L2, A> pg2_trans : pg2.getTransitions()) {
-            for (Pair<L1, L2> pg_location1 : interleavedPG.getLocations()) {
-                if (pg_location1.second.equals(pg2_trans.getFrom())) {
-                    for (Pair<L1, L2> pg_location2 : interleavedPG.getLocations()) {
-                        if (pg_location2.second.equals(pg2_trans.getTo()) && pg_location2.first.equals(pg_location1.first)) {
-                            interleavedPG.addTransition(new PGTransition<>(pg_location1, pg2_trans.getCondition(), pg2_trans.getAction(), pg_location2));
-                        }
-                    }
-                }
-            }
-        }
+        return interleave(pg1, pg2, false);
+    }
 
+    /**
+     * @param reachableOnly whether to keep only the locations reachable from the initial ones along the
+     *                      edges, rather than all of {@code L1 x L2}.
+     */
+    public <L1, L2, A> ProgramGraph<Pair<L1, L2>, A> interleave
+            (ProgramGraph<L1, A> pg1, ProgramGraph<L2, A> pg2, boolean reachableOnly) {
+        return new ProgramGraphInterleaving<>(Arrays.asList(pg1, pg2))
+                .build(pg1.getName() + "_interleaved_with_" + pg2.getName(), FvmFacadeImpl::<L1, L2>asPair, reachableOnly);
+    }
 
-        return interleavedPG;
+    /**
+     * Interleaves any number of program graphs at once, {@code PG1 ||| ... ||| PGn}, e.g. the processes of
+     * a mutual exclusion protocol.
+     *
+     * @param reachableOnly whether to keep only the locations reachable from the initial ones along the
+     *                      edges, rather than all of {@code L1 x ... x Ln}.
+     * @return a program graph whose locations hold one location per component, in order.
+     */
+    public <L, A> ProgramGraph<List<L>, A> interleaveProgramGraphs(List<? extends ProgramGraph<? extends L, A>> pgs, boolean reachableOnly) {
+        List<String> names = new ArrayList<>();
+        for (ProgramGraph<? extends L, A> pg : pgs)
+            names.add(pg.getName());
+        return new ProgramGraphInterleaving<>(pgs)
+                .build(String.join("_interleaved_with_", names), FvmFacadeImpl::<L>asList, reachableOnly);
     }
 
     @Override
     public TransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> transitionSystemFromCircuit
             (Circuit c) {
-        TransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> ts = createTransitionSystem();
-
-        //states init
-        circuit_states_init(c, ts);
-
-        // init initials
-        for (Pair<Map<String, Boolean>, Map<String, Boolean>> state : ts.getStates()) {
-            if (!state.second.values().contains(Boolean.TRUE))
-                ts.setInitial(state, true);
-        }
-
-        // init actions
-        //pay attention, maybe need a deep copy here
-        for (Pair<Map<String, Boolean>, Map<String, Boolean>> state : ts.getStates()) {
-            ts.addAction((state.first));
-        }
-
-        // init atomic proposition
-        for (String reg : c.getRegisterNames())
-            ts.addAtomicProposition(reg);
-        for (String in : c.getInputPortNames())
-            ts.addAtomicProposition(in);
-        for (String out : c.getOutputPortNames())
-            ts.addAtomicProposition(out);
-
-
-        // init labels
-        for (Pair<Map<String, Boolean>, Map<String, Boolean>> state : ts.getStates()) {
-            for (String reg : c.getRegisterNames())
-                if (state.second.get(reg))
-                    ts.addToLabel(state, reg);
-            for (String in : c.getInputPortNames())
-                if (state.first.get(in))
-                    ts.addToLabel(state, in);
-            for (String out : c.getOutputPortNames())
-                if (c.computeOutputs(state.first, state.second).get(out))
-                    ts.addToLabel(state, out);
-        }
-
-        // init transitions
-        for (Pair<Map<String, Boolean>, Map<String, Boolean>> state : ts.getStates()) {
-            Transition<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>> transition;
-            for (Map<String, Boolean> action : ts.getActions()) {
-                Pair<Map<String, Boolean>, Map<String, Boolean>> toState = findStateCircuit(c, state, action, ts);
-                transition = new Transition<>(state, action, toState);
-                ts.addTransition(transition);
-            }
-        }
-
-        // init name
-        ts.setName("circuit to transition system");
+        return symbolicCircuit(c).toTransitionSystem();
+    }
 
-        // remove unreachable
-        remove_unreachable(ts);
-        return ts;
+    /**
+     * @return a symbolic reachability engine for {@code c}; the reachable registers are computed on first use.
+     */
+    public SymbolicCircuit symbolicCircuit(Circuit c) {
+        return new SymbolicCircuit(c);
     }
 
     @Override
     public <L, A> TransitionSystem<Pair<L, Map<String, Object>>, A, String> transitionSystemFromProgramGraph
             (ProgramGraph<L, A> pg, Set<ActionDef> actionDefs, Set<ConditionDef> conditionDefs) {
-        TransitionSystem<Pair<L, Map<String, Object>>, A, String> ts = new TransitionSystemImpl<>();
-        ts.setName(pg.getName() + "_as_transition_system");
-
-        Stack<Pair<L, Map<String, Object>>> to_work_on = new Stack<>();
-        Set<Transition<Pair<L, Map<String, Object>>, A>> transitions = new HashSet<>();
-
-        Set<Map<String, Object>> state_maps = new HashSet<>();
-        for (List<String> initialization_list : pg.getInitalizations()) {
-            Map<String, Object> state_map = new HashMap<>();
-            for (String init_string : initialization_list) {
-                for (ActionDef ad : actionDefs) {
-                    if (ad.isMatchingAction(init_string)) {
-                        state_map = ad.effect(state_map, init_string);
-                    }
-                }
-            }
-            state_maps.add(state_map);
-        }
-        if (state_maps.size() == 0) {
-            state_maps.add(new HashMap<>());
-        }
-
-        for (Map<String, Object> state_map : state_maps) {
-            for (L init_loc : pg.getInitialLocations()) {
-
-                to_work_on.push(new Pair<>(init_loc, state_map));
-
-                while (!to_work_on.empty()) {
-                    Pair<L, Map<String, Object>> current_loc = to_work_on.pop();
-                    for (PGTransition<L, A> pg_transition : pg.getTransitions()) {
-                        if (pg_transition.getFrom().equals(current_loc.first)) {
-                            if (ConditionDef.evaluate(conditionDefs, current_loc.second, pg_transition.getCondition())) {
-                                Map<String, Object> new_state = current_loc.second;
-                                for (ActionDef ad : actionDefs) {
-                                    if (ad.isMatchingAction(pg_transition.getAction())) {
-                                        new_state = ad.effect(current_loc.second, pg_transition.getAction());
-                                        break;
-                                    }
-                                }
-                                transitions.add(new Transition<>(new Pair<>(current_loc.first, current_loc.second), pg_transition.getAction(), new Pair<>(pg_transition.getTo(), new_state)));
-                                if (!ts.getStates().contains(new Pair<>(pg_transition.getTo(), new_state))) {
-                                    to_work_on.push(new Pair<>(pg_transition.getTo(), new_state));
-                                }
-                            }
-                        }
-                    }
-                    Pair<L, Map<String, Object>> state_to_add = new Pair<>(current_loc.first, current_loc.second);
-                    ts.addStates(state_to_add);
-                    ts.addAtomicPropositions(current_loc.first.toString());
-                    ts.addToLabel(state_to_add, current_loc.first.toString());
-                    for (String key : current_loc.second.keySet()) {
-                        ts.addAtomicPropositions(key + " = " + current_loc.second.get(key));
-                        ts.addToLabel(state_to_add, key + " = " + current_loc.second.get(key));
-                    }
-                }
-            }
-        }
-
-
-        for (Map<String, Object> state_map : state_maps) {
-            for (L init_loc : pg.getInitialLocations()) {
-                for (Pair<L, Map<String, Object>> state : ts.getStates()) {
-                    if (state.first.equals(init_loc) && state.second.equals(state_map)) {
-                        ts.setInitial(state, true);
-                    }
-                }
-            }
-        }
-
-
-        for (Transition<Pair<L, Map<String, Object>>, A> transition : transitions) {
-            ts.addAction(transition.getAction());
-            ts.addTransition(transition);
-        }
+        ProgramGraphExplorer<L, A> explorer = new ProgramGraphExplorer<>(pg, actionDefs, conditionDefs, visited_sets());
+        return parallelism > 1 ? explorer.exploreParallel(parallelism) : explorer.explore();
+    }
 
-        return ts;
+    /**
+     * Same as {@link #transitionSystemFromProgramGraph(ProgramGraph, Set, Set)} for a program graph
+     * interleaving identical processes, keeping one state per orbit of {@code symmetry}: states equal up
+     * to a permutation of the processes are merged into one representative. Only properties that are
+     * symmetric in the processes are preserved.
+     */
+    public <L, A> TransitionSystem<Pair<L, Map<String, Object>>, A, String> transitionSystemFromProgramGraph
+            (ProgramGraph<L, A> pg, Set<ActionDef> actionDefs, Set<ConditionDef> conditionDefs, ProcessSymmetry symmetry) {
+        ProgramGraphExplorer<L, A> explorer = new ProgramGraphExplorer<>(pg, actionDefs, conditionDefs, visited_sets());
+        explorer.reduceSymmetry(symmetry);
+        return parallelism > 1 ? explorer.exploreParallel(parallelism) : explorer.explore();
     }
 
     @Override
     public <L, A> TransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> transitionSystemFromChannelSystem
             (ChannelSystem<L, A> cs) {
+        return channelSystemExplorer(cs).explore();
+    }
 
-        TransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> ts = createTransitionSystem();
-
+    /**
+     * Same as {@link #transitionSystemFromChannelSystem(ChannelSystem)}, with partial order reduction: where
+     * a process's enabled steps are independent of all the other processes, and invisible, only they are
+     * explored. The result preserves the stutter invariant properties over the {@code "var = value"}
+     * propositions of {@code observedVariables}, but not the other propositions.
+     */
+    public <L, A> TransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> transitionSystemFromChannelSystem
+            (ChannelSystem<L, A> cs, Set<String> observedVariables) {
+        ChannelSystemExplorer<L, A> explorer = channelSystemExplorer(cs);
+        explorer.setPartialOrderReduction(Objects.requireNonNull(observedVariables));
+        return explorer.explore();
+    }
 
+    /**
+     * Prepares the exploration of {@code cs} without running it, so that its progress counters can be
+     * watched while {@link ChannelSystemExplorer#explore()} runs.
+     */
+    public <L, A> ChannelSystemExplorer<L, A> channelSystemExplorer(ChannelSystem<L, A> cs) {
         List<ProgramGraph<L, A>> pgList = cs.getProgramGraphs();
 
         //states
@@ -506,119 +540,13 @@ public class FvmFacadeImpl implements FvmFacade {
         Set<List<L>> list_of_init_states = make_init_states_pgs(pgList);
         Set<Pair<List<L>, Map<String, Object>>> init_states = new HashSet<>();
 
-
-        ActionDef async = new ParserBasedActDef();
-        InterleavingActDef sync = new ParserBasedInterleavingActDef();
-        ConditionDef cond = new ParserBasedCondDef();
-        List<Transition<Pair<List<L>, Map<String, Object>>, A>> transitionList = new LinkedList<>();
-        Set<Pair<List<L>, Map<String, Object>>> sawThem = new HashSet<>();
-
         for (List<L> l : list_of_init_states)
             for (Map<String, Object> m : variables)
                 init_states.add(new Pair<>(l, m));
 
-
-        for (Pair<List<L>, Map<String, Object>> state : init_states) {
-            sawThem.add(state);
-            transitionList.addAll(recursive_transition(cs, state, 0, async, sync, cond, ts, sawThem));
-        }
-
-        for (Transition<Pair<List<L>, Map<String, Object>>, A> t : transitionList) {
-            if (!ts.getStates().contains(t.getFrom()))
-                ts.addState(t.getFrom());
-            if (!ts.getStates().contains(t.getTo()))
-                ts.addState(t.getTo());
-            if (!ts.getActions().contains(t.getAction()))
-                ts.addAction(t.getAction());
-            ts.addTransition(t);
-        }
-
-
-        for (Pair<List<L>, Map<String, Object>> p : init_states) {
-            ts.addState(p);
-            ts.setInitial(p, true);
-        }
-
-        //atomic prop
-        for (Pair<List<L>, Map<String, Object>> state : ts.getStates()) {
-            for (L small_state : state.getFirst()) {
-                ts.addAtomicProposition(small_state.toString());
-                ts.addToLabel(state, small_state.toString());
-            }
-            for (Map.Entry<String, Object> var_vals : state.getSecond().entrySet()) {
-                ts.addAtomicProposition(var_vals.getKey() + " = " + var_vals.getValue().toString());
-                ts.addToLabel(state, var_vals.getKey() + " = " + var_vals.getValue().toString());
-            }
-        }
-
-        return ts;
-    }
-
-    private <A, L> List<Transition<Pair<List<L>, Map<String, Object>>, A>> recursive_transition(ChannelSystem<L, A> cs, Pair<List<L>, Map<String, Object>> state, int index, ActionDef async, InterleavingActDef sync, ConditionDef cond, TransitionSystem<Pair<List<L>, Map<String, Object>>, A, String> ts, Set<Pair<List<L>, Map<String, Object>>> sawThem) {
-        List<Transition<Pair<List<L>, Map<String, Object>>, A>> tranList = new LinkedList<>();
-        if (index == cs.getProgramGraphs().size())
-            return tranList;
-        ProgramGraph<L, A> pg = cs.getProgramGraphs().get(index);
-
-        for (PGTransition<L, A> transition : pg.getTransitions()) {
-            if (state.getFirst().get(index).equals(transition.getFrom()))
-                if (cond.evaluate(state.getSecond(), transition.getCondition())) {
-                    String actionString = transition.getAction().toString();
-                    if (sync.isOneSidedAction(transition.getAction().toString())) {
-                        int index2 = 0;
-                        for (ProgramGraph<L, A> pgs : cs.getProgramGraphs()) {
-                            for (PGTransition<L, A> transition2 : pgs.getTransitions()) {
-                                String actionString2 = transition2.getAction().toString();
-                                if (state.getFirst().get(index2).equals(transition2.getFrom()) && sync.isOneSidedAction(transition2.getAction().toString())) {
-
-                                    if (((actionString.contains("!") && actionString2.contains("?")) ||
-                                            (actionString.contains("?") && actionString2.contains("!"))) &&
-                                            actionString.substring(0, actionString.length() - 1).equals(actionString2.substring(0, actionString2.length() - 1))) {
-                                        if (cond.evaluate(state.getSecond(), transition2.getCondition())) {
-                                            String newAction = "";
-                                            if (index < index2)
-                                                newAction = actionString + "|" + actionString2;
-                                            else
-                                                newAction = actionString2 + "|" + actionString;
-                                            List<L> myCopy = new LinkedList<>(state.getFirst());
-                                            myCopy.set(index, transition.getTo());
-                                            myCopy.set(index2, transition2.getTo());
-                                            A castAction = (A) newAction;
-
-                                            Pair<List<L>, Map<String, Object>> newState = new Pair<>(myCopy, sync.effect(state.getSecond(), castAction));
-                                            if (!sawThem.contains(newState)) {
-                                                sawThem.add(newState);
-                                                tranList.addAll(recursive_transition(cs, newState, 0, async, sync, cond, ts, sawThem));
-                                            }
-                                            tranList.add(new Transition<>(state, castAction, newState));
-
-                                        }
-                                    }
-                                }
-                            }
-                            index2++;
-                        }
-                    } else {
-                        List<L> myCopy = new LinkedList<>(state.getFirst());
-                        myCopy.set(index, transition.getTo());
-                        Pair<List<L>, Map<String, Object>> newState = new Pair<>(myCopy, async.effect(state.getSecond(), transition.getAction()));
-                        if (newState.second != null) {
-                            if (!sawThem.contains(newState)) {
-                                sawThem.add(newState);
-                                tranList.addAll(recursive_transition(cs, newState, 0, async, sync, cond, ts, sawThem));
-
-                            }
-                            tranList.add(new Transition<>(state, transition.getAction(), newState));
-                        }
-
-                    }
-                }
-        }
-        tranList.addAll(recursive_transition(cs, state, index + 1, async, sync, cond, ts, sawThem));
-        return tranList;
+        return new ChannelSystemExplorer<>(cs, init_states, visited_sets());
     }
 
-
     private <A, L> Set<Map<String, Object>> make_variables_pgs(List<ProgramGraph<L, A>> pgList) {
 
         Map<String, Set<Integer>> args = new HashMap<>();
@@ -752,73 +680,50 @@ public class FvmFacadeImpl implements FvmFacade {
         TransitionSystem<Pair<Sts, Saut>, A, Saut> transitionSystem = new TransitionSystemImpl<>();
         transitionSystem.setName(ts.getName() + "with_automaton");
 
-        Set<Transition<Pair<Sts, Saut>, A>> transitions = new HashSet<>();
-
-        for (Transition<Sts, A> ts_transition : ts.getTransitions()) {
-            for (Saut auto_state : aut.getTransitions().keySet()) {
-                for (Set<P> tagging : aut.getTransitions().get(auto_state).keySet()) {
-                    if (tagging.equals(ts.getLabel(ts_transition.getTo()))) {
-                        for (Saut auto_state2 : aut.getTransitions().get(auto_state).get(tagging)) {
-                            Pair<Sts, Saut> from = new Pair<>(ts_transition.getFrom(), auto_state);
-                            Pair<Sts, Saut> to = new Pair<>(ts_transition.getTo(), auto_state2);
-                            transitions.add(new Transition<>(from, ts_transition.getAction(), to));
-                        }
-                    }
-                }
-            }
-        }
-
-        for (Transition<Pair<Sts, Saut>, A> transition : transitions) {
-            transitionSystem.addState(transition.getFrom());
-            transitionSystem.addState(transition.getTo());
-        }
-
         for (A action : ts.getActions()) {
             transitionSystem.addAction(action);
         }
 
-        for (Transition<Pair<Sts, Saut>, A> transition : transitions) {
-            transitionSystem.addTransition(transition);
-        }
-
-        for (Sts initial_state : ts.getInitialStates()) {
-            if (ts.getInitialStates().contains(initial_state)) {
-                for (Saut initial : aut.getInitialStates()) {
-                    for (Set<P> tagging : aut.getTransitions().get(initial).keySet()) {
-                        if (tagging.equals(ts.getLabel(initial_state))) {
-                            for (Saut aut_state : aut.getTransitions().get(initial).get(tagging)) {
-                                transitionSystem.setInitial(new Pair<>(initial_state, aut_state), true);
-                            }
-                        }
-                    }
+        // forward from the initial pairs, so only the reachable part of the product is ever built
+        LazyProduct<Sts, A, P, Saut> product = new LazyProduct<>(ts, aut);
+        Deque<Pair<Sts, Saut>> to_work_on = new ArrayDeque<>();
+        try (StateStore visited = visited_sets().apply(transitionSystem)) {
+            for (Pair<Sts, Saut> initial : product.initialStates()) {
+                if (visited.add(initial)) {
+                    product_add_state(transitionSystem, initial);
+                    to_work_on.push(initial);
+                } else if (!visited.isExact() && !transitionSystem.getStates().contains(initial)) {
+                    continue;
                 }
+                transitionSystem.setInitial(initial, true);
             }
-        }
 
-        Set<Pair<Sts, Saut>> reachable_states = reach(transitionSystem);
-        Set<Pair<Sts, Saut>> toRemoveStates = new HashSet<>();
-
-        for (Pair<Sts, Saut> state : transitionSystem.getStates()) {
-            if (!reachable_states.contains(state)) {
-                for (Transition<Pair<Sts, Saut>, A> transition : transitions) {
-                    if (transition.getFrom().equals(state) || transition.getTo().equals(state)) {
-                        transitionSystem.removeTransition(transition);
+            while (!to_work_on.isEmpty()) {
+                for (Transition<Pair<Sts, Saut>, A> transition : product.transitionsFrom(to_work_on.pop())) {
+                    if (visited.add(transition.getTo())) {
+                        product_add_state(transitionSystem, transition.getTo());
+                        to_work_on.push(transition.getTo());
+                    } else if (!visited.isExact() && !transitionSystem.getStates().contains(transition.getTo())) {
+                        continue;
                     }
+                    transitionSystem.addTransition(transition);
                 }
-                toRemoveStates.add(state);
             }
         }
-        for (Pair<Sts, Saut> state : toRemoveStates) {
-            transitionSystem.removeState(state);
-        }
 
-        for (Pair<Sts, Saut> state : transitionSystem.getStates()) {
-            transitionSystem.addAtomicProposition(state.getSecond());
-            transitionSystem.addToLabel(state, state.getSecond());
-        }
+        return transitionSystem;
+    }
 
+    // the visited sets of the explorations that build a transition system
+    private Function<TransitionSystem<?, ?, ?>, StateStore> visited_sets() {
+        return StateStores.forExplorations(stateStores, exactStores);
+    }
 
-        return transitionSystem;
+    // a product state is labeled by its automaton state
+    private <Sts, Saut, A> void product_add_state(TransitionSystem<Pair<Sts, Saut>, A, Saut> ts, Pair<Sts, Saut> state) {
+        ts.addState(state);
+        ts.addAtomicProposition(state.getSecond());
+        ts.addToLabel(state, state.getSecond());
     }
 
     @Override
@@ -845,72 +750,76 @@ public class FvmFacadeImpl implements FvmFacade {
     @Override
     public <S, A, P, Saut> VerificationResult<S> verifyAnOmegaRegularProperty
             (TransitionSystem<S, A, P> ts, Automaton<Saut, P> aut) {
-        TransitionSystem<Pair<S, Saut>, A, Saut> product_ts = product(ts, aut);
-
-        Set<Pair<S, Saut>> initials = product_ts.getInitialStates();
-        Set<Saut> aut_accepting_states = aut.getAcceptingStates();
-
-        for (Pair<S, Saut> initial : initials) {
-            List<Pair<S, Saut>> cycle = travelTS(Arrays.asList(initial), aut_accepting_states, product_ts);
-            if (cycle != null) {
-                VerificationFailed verificationFailed = new VerificationFailed<>();
-                int index = cycle.indexOf(cycle.get(cycle.size()-1));
-                List<S> myCycle = new ArrayList<>();
-                List<S> myPrefix = new ArrayList<>();
-                for(int i = index; i<cycle.size()-1; i++)
-                    myCycle.add(cycle.get(i).first);
-                for(int i = 0; i<index; i++)
-                    myPrefix.add(cycle.get(i).first);
-
-                verificationFailed.setCycle(myCycle);
-                verificationFailed.setPrefix(myPrefix);
-
-                return verificationFailed;
-            }
-        }
+        // nested DFS on the product, generated on the fly; stops at the first accepting cycle
+        NestedDepthFirstSearch<S, Saut> search = new NestedDepthFirstSearch<>(new LazyProduct<>(ts, aut), aut.getAcceptingStates(), stateStores);
 
-        return new VerificationSucceeded<>();
-    }
-
-    private <Saut, S, A> List<Pair<S, Saut>> travelTS(List<Pair<S, Saut>> soFar, Set<Saut> aut_accepting_states, TransitionSystem<Pair<S, Saut>, A, Saut> product_ts) {
-
-        Set<Pair<S, Saut>> nextStates = new HashSet<>();
-
-        for(Transition<Pair<S,Saut>,A> transition : product_ts.getTransitions()){
-            if(transition.getFrom().equals(soFar.get(soFar.size()-1))) {
-                nextStates.add(transition.getTo());
-            }
-        }
+        if (search.run()) {
+            VerificationFailed<S> verificationFailed = new VerificationFailed<>();
+            List<S> myPrefix = new ArrayList<>();
+            List<S> myCycle = new ArrayList<>();
+            for (Pair<S, Saut> state : search.getPrefix())
+                myPrefix.add(state.first);
+            for (Pair<S, Saut> state : search.getCycle())
+                myCycle.add(state.first);
 
-        for(Pair<S,Saut> state : nextStates){
-            List<Pair<S, Saut>> nextList = new ArrayList<>(soFar);
-            nextList.add(state);
+            verificationFailed.setPrefix(myPrefix);
+            verificationFailed.setCycle(myCycle);
 
-            if(soFar.contains(state)){
-                int index = soFar.indexOf(state);
-                for(int i = index; i< soFar.size(); i++){
-                    if(aut_accepting_states.contains((soFar.get(i).second))){
-                        return nextList;
-                    }
-                }
-            }
-            else{
-                return travelTS(nextList,aut_accepting_states,product_ts);
-            }
+            return verificationFailed;
         }
 
-
-        return null;
+        return new VerificationSucceeded<>();
     }
 
     @Override
     public <L> Automaton<?, L> LTL2NBA(LTL<L> ltl) {
-        throw new UnsupportedOperationException("Not supported yet."); // TODO: Implement LTL2NBA
+        return ltlTranslator.translate(ltl, false).toAutomaton(Util.powerSet(LtlTranslator.atomicPropositions(ltl)));
     }
 
     @Override
     public <L> Automaton<?, L> GNBA2NBA(MultiColorAutomaton<?, L> mulAut) {
-        throw new UnsupportedOperationException("Not supported yet."); // TODO: Implement GNBA2NBA
+        return gnba_to_nba(mulAut);
+    }
+
+    /**
+     * Checks that every path of {@code ts} satisfies {@code property}: the negation of the property is
+     * translated into a Buchi automaton with guarded transitions (cached, so verifying the same property
+     * again doesn't translate it again), instantiated only for the labels {@code ts} actually uses, and
+     * looked for in the product by {@link #verifyAnOmegaRegularProperty}.
+     */
+    public <S, A, P> VerificationResult<S> verifyLTL(TransitionSystem<S, A, P> ts, LTL<P> property) {
+        Set<Set<P>> labels = new HashSet<>();
+        for (S s : ts.getStates())
+            labels.add(ts.getLabel(s));
+        return verifyAnOmegaRegularProperty(ts, ltlTranslator.translate(property, true).toAutomaton(labels));
+    }
+
+    // the counter construction, with one copy of the states per color; a single color needs no copies
+    private <Q, L> Automaton<Object, L> gnba_to_nba(MultiColorAutomaton<Q, L> gnba) {
+        List<Set<Q>> acceptance = new ArrayList<>();
+        for (int color : new TreeSet<>(gnba.getColors()))
+            acceptance.add(gnba.getAcceptingStates(color));
+        Map<Q, Map<Set<L>, Set<Q>>> transitions = gnba.getTransitions();
+
+        Automaton<Object, L> nba = new Automaton<>();
+        Degeneralization.degeneralize(gnba.getInitialStates(), q -> transitions.getOrDefault(q, Collections.emptyMap()), acceptance,
+                (q, copy) -> acceptance.size() <= 1 ? q : Arrays.asList(q, copy), new Degeneralization.Builder<Object, Set<L>>() {
+                    @Override
+                    public void addTransition(Object from, Set<L> symbol, Object to) {
+                        nba.addTransition(from, symbol, to);
+                    }
+
+                    @Override
+                    public void setInitial(Object state) {
+                        nba.setInitial(state);
+                    }
+
+                    @Override
+                    public void setAccepting(Object state) {
+                        nba.setAccepting(state);
+                    }
+                });
+        return nba;
     }
 
 
@@ -925,218 +834,14 @@ public class FvmFacadeImpl implements FvmFacade {
      *                   |_|
      */
 
-    private <STATE, ACTION, ATOMIC_PROPOSITION> void remove_unreachable(TransitionSystem<STATE, ACTION, ATOMIC_PROPOSITION> ts) {
-        Set<STATE> reachable_set = reach(ts);
-        Set<STATE> unreachable_states = new HashSet<>();
-        Set<Pair<STATE, ATOMIC_PROPOSITION>> ap_remove = new HashSet<>();
-        Set<Transition<STATE, ACTION>> unreachable_transitions = new HashSet<>();
-
-        for (STATE state : ts.getStates()) {
-            if (!reachable_set.contains(state)) {
-                Set<Transition<STATE, ACTION>> all = ts.getTransitions();
-                for (Transition<STATE, ACTION> transition : all)
-                    if (transition.getFrom().equals(state) || transition.getTo().equals(state))
-                        unreachable_transitions.add(transition);
-                unreachable_states.add(state);
-
-                for (ATOMIC_PROPOSITION ap : ts.getLabelingFunction().get(state))
-                    ap_remove.add(new Pair<>(state, ap));
-            }
-        }
-
-        for (Transition<STATE, ACTION> transition : unreachable_transitions)
-            ts.removeTransition(transition);
-
-        for (Pair<STATE, ATOMIC_PROPOSITION> p : ap_remove)
-            ts.removeLabel(p.first, p.second);
-
-        for (STATE state : unreachable_states) {
-            ts.removeState(state);
-        }
-    }
-
-    private Pair<Map<String, Boolean>, Map<String, Boolean>> findStateCircuit(Circuit
-                                                                                      c, Pair<Map<String, Boolean>,
-            Map<String, Boolean>> state, Map<String, Boolean> action, TransitionSystem<Pair<Map<String, Boolean>,
-            Map<String, Boolean>>, Map<String, Boolean>, Object> ts) {
-        for (Pair<Map<String, Boolean>, Map<String, Boolean>> state_in_ts : ts.getStates()) {
-            if (c.updateRegisters(state.first, state.second).equals(state_in_ts.second) &&
-                    action.equals(state_in_ts.first))
-                return state_in_ts;
-        }
-        return null; //should not ever happen
-    }
-
-    private void circuit_states_init(Circuit
-                                             c, TransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> ts) {
-        // init regs
-        Set<Map<String, Boolean>> reg = new HashSet<>();
-        String[] regs = new String[c.getRegisterNames().size()];
-        regs = c.getRegisterNames().toArray(regs);
-        circuit_create_map_states(reg, regs);
-
-        // init ins
-        Set<Map<String, Boolean>> in = new HashSet<>();
-        String[] inputs = new String[c.getInputPortNames().size()];
-        inputs = c.getInputPortNames().toArray(inputs);
-        circuit_create_map_states(in, inputs);
-
-        Set<Pair<Map<String, Boolean>, Map<String, Boolean>>> combined = s1_x_s2(in, reg);
-        for (Pair<Map<String, Boolean>, Map<String, Boolean>> p : combined)
-            ts.addState(p);
-    }
-
-    private void circuit_create_map_states(Set<Map<String, Boolean>> set, String[] names) {
-        int size = (int) Math.pow(2, names.length);
-
-        for (int i = 0; i < size; i++) {
-            Map<String, Boolean> map_i = new HashMap<>();
-            StringBuilder binStr = new StringBuilder(Integer.toBinaryString(i));
-            int zero_to_add = names.length - binStr.length();
-            for (int j = 0; j < zero_to_add; j++)
-                binStr.insert(0, "0");
-            for (int j = 0; j < names.length; j++) {
-                map_i.put(names[j], binStr.charAt(j) == '0' ? Boolean.FALSE : Boolean.TRUE);
-            }
-            set.add(map_i);
-        }
-    }
-
-    private <S1, S2, A, P> void interleave_initTransitionFunction_handShakingActions
-            (TransitionSystem<S1, A, P> ts1, TransitionSystem<S2, A, P> ts2, TransitionSystem<Pair<S1, S2>, A, P> interleaveTransitionSystem, Set<A> handShakingActions) {
-
-        //transition if action in handshake and (s1,s2)-a->(s1',s2) && (s1,s2)-a->(s1,s2')
-        for (A action : interleaveTransitionSystem.getActions())
-            if (handShakingActions.contains(action))
-                for (Transition<S1, A> transition1 : ts1.getTransitions())
-                    if (transition1.getAction().equals(action))
-                        for (Transition<S2, A> transition2 : ts2.getTransitions())
-                            if (transition2.getAction().equals(action)) {
-                                Pair<S1, S2> pairFrom = new Pair<>(transition1.getFrom(), transition2.getFrom());
-                                Pair<S1, S2> pairTo = new Pair<>(transition1.getTo(), transition2.getTo());
-                                interleaveTransitionSystem.addTransition(new Transition<>(pairFrom, action, pairTo));
-                            }
-
-        //transition (s1,s2)->(s1',s2)
-        for (Transition<S1, A> transition : ts1.getTransitions()) {
-            if (!handShakingActions.contains(transition.getAction()))
-                for (S2 s2_state : ts2.getStates()) {
-                    Pair<S1, S2> pairFrom = new Pair<>(transition.getFrom(), s2_state);
-                    Pair<S1, S2> pairTo = new Pair<>(transition.getTo(), s2_state);
-                    A action = transition.getAction();
-                    interleaveTransitionSystem.addTransition(new Transition<>(pairFrom, action, pairTo));
-                }
-        }
-        //transition (s1,s2)->(s1,s2')
-        for (Transition<S2, A> transition : ts2.getTransitions()) {
-            if (!handShakingActions.contains(transition.getAction()))
-                for (S1 s1_state : ts1.getStates()) {
-                    Pair<S1, S2> pairFrom = new Pair<>(s1_state, transition.getFrom());
-                    Pair<S1, S2> pairTo = new Pair<>(s1_state, transition.getTo());
-                    A action = transition.getAction();
-                    interleaveTransitionSystem.addTransition(new Transition<>(pairFrom, action, pairTo));
-                }
-        }
-    }
-
-    private <S1, S2, A, P> void interleave_initLabels
-            (TransitionSystem<S1, A, P> ts1, TransitionSystem<S2, A, P> ts2, TransitionSystem<Pair<S1, S2>, A, P> interleaveTransitionSystem) {
-        for (Pair<S1, S2> state : interleaveTransitionSystem.getStates()) {
-            for (P proposition : ts1.getLabelingFunction().get(state.first))
-                interleaveTransitionSystem.addToLabel(state, proposition);
-            for (P proposition : ts2.getLabelingFunction().get(state.second))
-                interleaveTransitionSystem.addToLabel(state, proposition);
-        }
-    }
-
-    private <S1, S2, A, P> void interleave_initAtomicProposition
-            (TransitionSystem<Pair<S1, S2>, A, P> interleaveTransitionSystem, Set<P> atomicPropositions) {
-        for (P proposition : atomicPropositions)
-            interleaveTransitionSystem.addAtomicProposition(proposition);
-    }
-
-    private <S1, S2, A, P> void interleave_initActions
-            (TransitionSystem<Pair<S1, S2>, A, P> interleaveTransitionSystem, Set<A> actions) {
-        for (A action : actions)
-            interleaveTransitionSystem.addAction(action);
-    }
-
-    private <S1, S2, A, P> void interleave_initStates
-            (TransitionSystem<Pair<S1, S2>, A, P> interleaveTransitionSystem, Set<S1> states, Set<S2> states2, boolean isInitial) {
-        Set<Pair<S1, S2>> interleaveStates = s1_x_s2(states, states2);
-        for (Pair<S1, S2> s : interleaveStates) {
-            interleaveTransitionSystem.addState(s);
-            if (isInitial)
-                interleaveTransitionSystem.setInitial(s, true);
-        }
-    }
-
-    // returns a set of pairs that consists of S1xS2
-    private <S1, S2> Set<Pair<S1, S2>> s1_x_s2(Set<S1> s1, Set<S2> s2) {
-        Set<Pair<S1, S2>> new_set = new HashSet<>();
-        for (S1 s1_item : s1) {
-            for (S2 s2_item : s2) {
-                new_set.add(new Pair<>(s1_item, s2_item));
-            }
-        }
-        return new_set;
-    }
-
-    private <S1, S2, A, P> TransitionSystem<Pair<S1, S2>, A, P> interleave_all_init_except_transition_and_name
-            (TransitionSystem<S1, A, P> ts1, TransitionSystem<S2, A, P> ts2) {
-        // new transition system (S1 x S2, act1 U act2, ->, I1 x I2, AP1 U AP2, L)
-        TransitionSystem<Pair<S1, S2>, A, P> interleaveTransitionSystem = createTransitionSystem();
-
-        // init states
-        interleave_initStates(interleaveTransitionSystem, ts1.getStates(), ts2.getStates(), false);
-
-        // init initials
-        interleave_initStates(interleaveTransitionSystem, ts1.getInitialStates(), ts2.getInitialStates(), true);
-
-        // init actions
-        interleave_initActions(interleaveTransitionSystem, ts1.getActions());
-        interleave_initActions(interleaveTransitionSystem, ts2.getActions());
-
-        // init atomic proposition
-        interleave_initAtomicProposition(interleaveTransitionSystem, ts1.getAtomicPropositions());
-        interleave_initAtomicProposition(interleaveTransitionSystem, ts2.getAtomicPropositions());
-
-        // init labels
-        interleave_initLabels(ts1, ts2, interleaveTransitionSystem);
-        return interleaveTransitionSystem;
-    }
-
-    private <S, A, P> AlternatingSequence<S, A> compareASandTS
-            (TransitionSystem<S, A, P> ts, AlternatingSequence<S, A> next) {
-        S stateFrom;
-        A action;
-        S stateTo;
-
-        if (next.tail().isEmpty()) {
-            if (ts.getStates().contains(next.head())) {
-                return next;
-            }
-        }
-        AlternatingSequence<A, S> tail = next.tail();
-        while (!next.tail().isEmpty()) {
-            stateFrom = next.head();
-            action = next.tail().head();
-            stateTo = next.tail().tail().head();
-            if (!ts.getStates().contains(stateFrom)) {
-                throw new StateNotFoundException(stateFrom);
-            } else if (!ts.getStates().contains(stateTo)) {
-                throw new StateNotFoundException(stateTo);
-            } else if (!ts.getActions().contains(action)) {
-                throw new ActionNotFoundException(action);
-            }
-
-            if (!ts.getTransitions().contains(new Transition<>(stateFrom, action, stateTo))) { //TODO: not sure if contains will perform deep compare
-                return null;
-            }
-            next = next.tail().tail();
-        }
-
-        return next;
+    // a sequence naming a state or action the system lacks is an error rather than a failed check
+    private <S, A> TraceChecker.Result<S, A> check_trace(TransitionSystem<S, A, ?> ts, AlternatingSequence<S, A> e) {
+        TraceChecker.Result<S, A> result = new TraceChecker<>(ts, 1).check(e);
+        if (result.getFailure() == TraceChecker.Failure.UNKNOWN_STATE)
+            throw new StateNotFoundException(result.getUnknown());
+        if (result.getFailure() == TraceChecker.Failure.UNKNOWN_ACTION)
+            throw new ActionNotFoundException(result.getUnknown());
+        return result;
     }
 
 
@@ -1331,6 +1036,11 @@ public class FvmFacadeImpl implements FvmFacade {
                 }
             }
         }
+        if (pg instanceof ProgramGraphImpl) {
+            ((ProgramGraphImpl<String, String>) pg).retainLocations(reachableLocations);
+            return pg;
+        }
+
         Set<String> locations_to_remove = new HashSet<>();
         for (String loc : pg.getLocations()) {
             if (!reachableLocations.contains(loc)) {
@@ -1356,6 +1066,11 @@ public class FvmFacadeImpl implements FvmFacade {
 
     public Set<String> post(ProgramGraph<String, String> pg, String location) {
         Set<String> post_locations = new HashSet<>();
+        if (pg instanceof ProgramGraphImpl) {
+            for (PGTransition<String, String> transition : ((ProgramGraphImpl<String, String>) pg).outgoing(location))
+                post_locations.add(transition.getTo());
+            return post_locations;
+        }
         for (PGTransition<String, String> transition : pg.getTransitions()) {
             if (transition.getFrom().equals(location))
                 post_locations.add(transition.getTo());
@@ -0,0 +1,117 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.automata.Automaton;
+
+import java.util.*;
+
+/**
+ * A Buchi automaton whose transitions carry guards rather than symbols: a guard is a conjunction of
+ * propositions that must hold and propositions that must not, and a transition reads every symbol its
+ * guard accepts. One guarded transition stands for as many concrete ones as there are symbols over the
+ * propositions it doesn't mention, so the automaton stays small whatever the number of propositions.
+ * <p>
+ * The states are {@code 0..stateCount()-1}. Concrete {@link Automaton}s are obtained for a given set
+ * of symbols, e.g. only the labels a transition system actually uses. Immutable once built.
+ */
+final class GuardedAutomaton<L> {
+
+    /**
+     * The symbols that contain all the {@code positive} propositions and none of the {@code negative} ones.
+     */
+    static final class Guard<L> {
+        final Set<L> positive;
+        final Set<L> negative;
+
+        Guard(Set<L> positive, Set<L> negative) {
+            this.positive = positive;
+            this.negative = negative;
+        }
+
+        boolean accepts(Set<L> symbol) {
+            if (!symbol.containsAll(positive))
+                return false;
+            for (L p : negative)
+                if (symbol.contains(p))
+                    return false;
+            return true;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Guard))
+                return false;
+            Guard<?> other = (Guard<?>) o;
+            return positive.equals(other.positive) && negative.equals(other.negative);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * positive.hashCode() + negative.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            if (positive.isEmpty() && negative.isEmpty())
+                return "true";
+            StringJoiner conjunction = new StringJoiner(" & ");
+            for (L p : positive)
+                conjunction.add(String.valueOf(p));
+            for (L p : negative)
+                conjunction.add("!" + p);
+            return conjunction.toString();
+        }
+    }
+
+    private final List<Map<Guard<L>, Set<Integer>>> transitions = new ArrayList<>();
+    private final Set<Integer> initialStates = new LinkedHashSet<>();
+    private final Set<Integer> acceptingStates = new LinkedHashSet<>();
+
+    int addState() {
+        transitions.add(new LinkedHashMap<>());
+        return transitions.size() - 1;
+    }
+
+    void addTransition(int from, Guard<L> guard, int to) {
+        transitions.get(from).computeIfAbsent(guard, g -> new LinkedHashSet<>()).add(to);
+    }
+
+    void setInitial(int state) {
+        initialStates.add(state);
+    }
+
+    void setAccepting(int state) {
+        acceptingStates.add(state);
+    }
+
+    int stateCount() {
+        return transitions.size();
+    }
+
+    /**
+     * @return the automaton reading {@code symbols}: {@code q -s-> q'} for every symbol {@code s} some
+     * guard from {@code q} to {@code q'} accepts.
+     */
+    Automaton<Integer, L> toAutomaton(Collection<? extends Set<L>> symbols) {
+        Automaton<Integer, L> aut = new Automaton<>();
+        for (int q = 0; q < transitions.size(); q++)
+            for (Map.Entry<Guard<L>, Set<Integer>> edge : transitions.get(q).entrySet())
+                for (Set<L> symbol : symbols)
+                    if (edge.getKey().accepts(symbol))
+                        for (int target : edge.getValue())
+                            aut.addTransition(q, symbol, target);
+        for (int q : initialStates)
+            aut.setInitial(q);
+        for (int q : acceptingStates)
+            aut.setAccepting(q);
+        return aut;
+    }
+
+    @Override
+    public String toString() {
+        int edges = 0;
+        for (Map<Guard<L>, Set<Integer>> byGuard : transitions)
+            for (Set<Integer> targets : byGuard.values())
+                edges += targets.size();
+        return String.format("%d states, %d guarded transitions, %d accepting", stateCount(), edges, acceptingStates.size());
+    }
+}
@@ -0,0 +1,32 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps the visited states in a {@code HashSet}. The default store.
+ */
+public class HeapStateStore implements StateStore {
+
+    private Set<Object> states = new HashSet<>();
+
+    @Override
+    public boolean add(Object state) {
+        return states.add(state);
+    }
+
+    @Override
+    public boolean contains(Object state) {
+        return states.contains(state);
+    }
+
+    @Override
+    public long size() {
+        return states.size();
+    }
+
+    @Override
+    public void close() {
+        states = null;
+    }
+}
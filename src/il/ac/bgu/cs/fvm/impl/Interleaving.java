@@ -0,0 +1,163 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * The interleaving {@code TS1 ||| ... ||| TSn} of any number of transition systems, built forward from
+ * {@code I1 x ... x In}: only the reachable tuples of states, and their transitions, are ever created.
+ * <p>
+ * A handshake action moves every component at once, and is blocked unless every component can take it;
+ * any other action moves a single component. Each component's transitions are bucketed by action
+ * ({@link TransitionsByAction}), so a handshake only joins the components' buckets for that action.
+ * <p>
+ * A tuple is labeled by the union of its components' labels; the actions and atomic propositions are
+ * those of all the components.
+ * <p>
+ * Internally a tuple is a {@code List<Object>}; the caller decides how it appears in the result, e.g. as
+ * nested {@code Pair}s for two components.
+ */
+class Interleaving<A, P> {
+
+    private final List<TransitionSystem<Object, A, P>> components;
+    private final List<TransitionsByAction<Object, A>> edges;
+    private final Set<A> handshake;
+
+    @SuppressWarnings("unchecked")
+    Interleaving(List<? extends TransitionSystem<?, A, P>> components, Set<A> handshake) {
+        this.components = new ArrayList<>();
+        this.edges = new ArrayList<>();
+        for (TransitionSystem<?, A, P> ts : components) {
+            this.components.add((TransitionSystem<Object, A, P>) ts);
+            this.edges.add(new TransitionsByAction<>((TransitionSystem<Object, A, P>) ts));
+        }
+        this.handshake = handshake;
+    }
+
+    /**
+     * @param asState how a tuple of component states appears in the result; called once per reachable tuple.
+     */
+    <T> TransitionSystem<T, A, P> build(String name, Function<List<Object>, T> asState) {
+        TransitionSystem<T, A, P> ts = new TransitionSystemImpl<>();
+        ts.setName(name);
+        for (TransitionSystem<Object, A, P> component : components) {
+            for (A action : component.getActions())
+                ts.addAction(action);
+            for (P ap : component.getAtomicPropositions())
+                ts.addAtomicProposition(ap);
+        }
+
+        Map<List<Object>, T> visited = new HashMap<>();
+        Deque<List<Object>> to_work_on = new ArrayDeque<>();
+        for (List<Object> initial : initialStates()) {
+            T state = visited.get(initial);
+            if (state == null)
+                state = discover(ts, initial, asState, visited, to_work_on);
+            ts.setInitial(state, true);
+        }
+
+        while (!to_work_on.isEmpty()) {
+            List<Object> from = to_work_on.pop();
+            T fromState = visited.get(from);
+            for (Transition<List<Object>, A> t : successors(from)) {
+                T toState = visited.get(t.getTo());
+                if (toState == null)
+                    toState = discover(ts, t.getTo(), asState, visited, to_work_on);
+                ts.addTransition(new Transition<>(fromState, t.getAction(), toState));
+            }
+        }
+        return ts;
+    }
+
+    private <T> T discover(TransitionSystem<T, A, P> ts, List<Object> tuple, Function<List<Object>, T> asState,
+                           Map<List<Object>, T> visited, Deque<List<Object>> to_work_on) {
+        T state = asState.apply(tuple);
+        visited.put(tuple, state);
+        ts.addState(state);
+        for (int i = 0; i < components.size(); i++)
+            for (P ap : components.get(i).getLabel(tuple.get(i)))
+                ts.addToLabel(state, ap);
+        to_work_on.push(tuple);
+        return state;
+    }
+
+    // I1 x ... x In
+    private List<List<Object>> initialStates() {
+        List<List<Object>> tuples = new ArrayList<>();
+        tuples.add(new ArrayList<>());
+        for (TransitionSystem<Object, A, P> component : components) {
+            List<List<Object>> extended = new ArrayList<>();
+            for (List<Object> tuple : tuples) {
+                for (Object s : component.getInitialStates()) {
+                    List<Object> longer = new ArrayList<>(tuple);
+                    longer.add(s);
+                    extended.add(longer);
+                }
+            }
+            tuples = extended;
+        }
+        return tuples;
+    }
+
+    List<Transition<List<Object>, A>> successors(List<Object> tuple) {
+        List<Transition<List<Object>, A>> transitions = new ArrayList<>();
+        for (int i = 0; i < components.size(); i++) {
+            for (Map.Entry<A, List<Transition<Object, A>>> bucket : edges.get(i).from(tuple.get(i)).entrySet()) {
+                if (handshake.contains(bucket.getKey()))
+                    continue;
+                for (Transition<Object, A> t : bucket.getValue()) {
+                    List<Object> to = new ArrayList<>(tuple);
+                    to.set(i, t.getTo());
+                    transitions.add(new Transition<>(tuple, t.getAction(), to));
+                }
+            }
+        }
+        if (!handshake.isEmpty() && !components.isEmpty())
+            for (A action : handshakeCandidates(tuple.get(0)))
+                joinHandshake(tuple, action, transitions);
+        return transitions;
+    }
+
+    // the handshake actions the first component can take: whichever of the two sets is smaller is scanned
+    private Collection<A> handshakeCandidates(Object s) {
+        Set<A> enabled = edges.get(0).from(s).keySet();
+        Collection<A> candidates = new ArrayList<>();
+        if (enabled.size() < handshake.size()) {
+            for (A action : enabled)
+                if (handshake.contains(action))
+                    candidates.add(action);
+        } else {
+            for (A action : handshake)
+                if (enabled.contains(action))
+                    candidates.add(action);
+        }
+        return candidates;
+    }
+
+    // every component moves on 'action': the join of each component's bucket for it
+    private void joinHandshake(List<Object> from, A action, List<Transition<List<Object>, A>> transitions) {
+        List<List<Transition<Object, A>>> buckets = new ArrayList<>(components.size());
+        for (int i = 0; i < components.size(); i++) {
+            List<Transition<Object, A>> bucket = edges.get(i).from(from.get(i), action);
+            if (bucket.isEmpty())
+                return;
+            buckets.add(bucket);
+        }
+        join(from, action, buckets, 0, new ArrayList<>(from), transitions);
+    }
+
+    private void join(List<Object> from, A action, List<List<Transition<Object, A>>> buckets, int i,
+                      List<Object> to, List<Transition<List<Object>, A>> transitions) {
+        if (i == buckets.size()) {
+            transitions.add(new Transition<>(from, action, new ArrayList<>(to)));
+            return;
+        }
+        for (Transition<Object, A> t : buckets.get(i)) {
+            to.set(i, t.getTo());
+            join(from, action, buckets, i + 1, to, transitions);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.automata.Automaton;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * The product of a transition system and an automaton, generated on demand: nothing is built up
+ * front, the states and transitions of a product state are computed when asked for.
+ * <p>
+ * A pair {@code <s', q'>} follows {@code <s, q>} if {@code s -a-> s'} in the transition system and
+ * {@code q' in delta(q, L(s'))}. The initial states are {@code <s0, q>} with {@code s0} initial and
+ * {@code q in delta(q0, L(s0))} for some initial {@code q0}.
+ */
+class LazyProduct<S, A, P, Saut> {
+
+    private final TransitionSystem<S, A, P> ts;
+    private final Automaton<Saut, P> aut;
+    private final Adjacency<S, A> adjacency;
+    private final Map<Saut, Map<Set<P>, Set<Saut>>> delta;
+
+    // compact systems only: the label class of each state id (-1 until first read), and for each class
+    // its label and the steps the automaton states take on it
+    private final CompactTransitionSystem<S, A, P> compact;
+    private final int[] labelClass;
+    private final Map<BitSet, Integer> classIds = new HashMap<>();
+    private final List<Set<P>> classLabels = new ArrayList<>();
+    private final List<Map<Saut, Set<Saut>>> classSteps = new ArrayList<>();
+
+    LazyProduct(TransitionSystem<S, A, P> ts, Automaton<Saut, P> aut) {
+        this.ts = ts;
+        this.aut = aut;
+        this.adjacency = new Adjacency<>(ts);
+
+        // re-key the automaton's transitions by fresh copies of the labels, so each step is a single hash lookup
+        delta = new HashMap<>();
+        for (Map.Entry<Saut, Map<Set<P>, Set<Saut>>> source : aut.getTransitions().entrySet()) {
+            Map<Set<P>, Set<Saut>> byLabel = new HashMap<>();
+            for (Map.Entry<Set<P>, Set<Saut>> tagging : source.getValue().entrySet())
+                byLabel.computeIfAbsent(new HashSet<>(tagging.getKey()), k -> new HashSet<>()).addAll(tagging.getValue());
+            delta.put(source.getKey(), byLabel);
+        }
+
+        if (ts instanceof CompactTransitionSystem) {
+            compact = (CompactTransitionSystem<S, A, P>) ts;
+            labelClass = new int[compact.stateCount()];
+            Arrays.fill(labelClass, -1);
+        } else {
+            compact = null;
+            labelClass = null;
+        }
+    }
+
+    Set<Pair<S, Saut>> initialStates() {
+        Set<Pair<S, Saut>> initials = new LinkedHashSet<>();
+        if (compact != null) {
+            BitSet ids = compact.initialIds();
+            for (int s = ids.nextSetBit(0); s >= 0; s = ids.nextSetBit(s + 1))
+                for (Saut q0 : aut.getInitialStates())
+                    for (Saut q : step(q0, s))
+                        initials.add(new Pair<>(compact.state(s), q));
+            return initials;
+        }
+        for (S s : ts.getInitialStates())
+            for (Saut q0 : aut.getInitialStates())
+                for (Saut q : step(q0, s))
+                    initials.add(new Pair<>(s, q));
+        return initials;
+    }
+
+    List<Transition<Pair<S, Saut>, A>> transitionsFrom(Pair<S, Saut> state) {
+        List<Transition<Pair<S, Saut>, A>> transitions = new ArrayList<>();
+        expand(state, (action, to) -> transitions.add(new Transition<>(state, action, to)));
+        return transitions;
+    }
+
+    Set<Pair<S, Saut>> successors(Pair<S, Saut> state) {
+        Set<Pair<S, Saut>> successors = new LinkedHashSet<>();
+        expand(state, (action, to) -> successors.add(to));
+        return successors;
+    }
+
+    // passes every product transition leaving state to 'edge', as its action and target
+    private void expand(Pair<S, Saut> state, BiConsumer<A, Pair<S, Saut>> edge) {
+        if (compact != null) {
+            // on ids: the targets are neither hashed nor have their labels looked up
+            int id = compact.stateId(state.first);
+            if (id < 0)
+                return;
+            for (int e = compact.firstOut(id); e < compact.endOut(id); e++) {
+                int to = compact.target(e);
+                for (Saut q : step(state.second, to))
+                    edge.accept(compact.action(compact.outAction(e)), new Pair<>(compact.state(to), q));
+            }
+            return;
+        }
+        for (Transition<S, A> t : adjacency.outgoing(state.first))
+            for (Saut q : step(state.second, t.getTo()))
+                edge.accept(t.getAction(), new Pair<>(t.getTo(), q));
+    }
+
+    // the automaton states q moves to when reading the label of s
+    private Set<Saut> step(Saut q, S s) {
+        return step(q, ts.getLabel(s));
+    }
+
+    // the same for the state with id s of a compact system, looked up once per label class and q
+    private Set<Saut> step(Saut q, int s) {
+        int c = labelClass[s];
+        if (c < 0) {
+            BitSet label = compact.label(s);
+            Integer known = classIds.get(label);
+            if (known == null) {
+                Set<P> propositions = new HashSet<>();
+                for (int p = label.nextSetBit(0); p >= 0; p = label.nextSetBit(p + 1))
+                    propositions.add(compact.atomicProposition(p));
+                known = classLabels.size();
+                classIds.put(label, known);
+                classLabels.add(propositions);
+                classSteps.add(new HashMap<>());
+            }
+            c = labelClass[s] = known;
+        }
+        Map<Saut, Set<Saut>> steps = classSteps.get(c);
+        Set<Saut> next = steps.get(q);
+        if (next == null) {
+            next = step(q, classLabels.get(c));
+            steps.put(q, next);
+        }
+        return next;
+    }
+
+    private Set<Saut> step(Saut q, Set<P> label) {
+        Map<Set<P>, Set<Saut>> byLabel = delta.get(q);
+        if (byLabel == null)
+            return Collections.emptySet();
+        Set<Saut> next = byLabel.get(label);
+        return next == null ? Collections.emptySet() : next;
+    }
+}
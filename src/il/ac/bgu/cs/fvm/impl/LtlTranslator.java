@@ -0,0 +1,336 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.ltl.*;
+
+import java.util.*;
+
+/**
+ * Translates LTL formulas into Buchi automata with {@link GuardedAutomaton guarded} transitions, by the
+ * tableau construction of Gerth, Peled, Vardi and Wolper ("Simple on-the-fly automatic verification of
+ * linear temporal logic", 1995).
+ * <p>
+ * The formula is first put in negation normal form, over {@code true}, {@code false}, propositions and
+ * their negations, and, or, next, until and release, with a few constant simplifications. While it is
+ * translated its subformulas are interned, so equal formulas are the same object and sets of them are
+ * bitsets. The
+ * tableau expands sets of obligations into nodes, each node holding the literals that must hold now and
+ * the formulas that must hold next; a node's literals become the guard of the transitions entering it,
+ * so no symbol is ever enumerated. Every until subformula gives an acceptance set, and the generalized
+ * automaton is turned into a plain one by {@link Degeneralization}.
+ * <p>
+ * Translated automata are cached by their normalized formula, so translating a formula again (or a
+ * formula equal to it up to double negation and constants) costs a lookup. The intern table only lives
+ * for one translation; the cache compares formulas structurally and holds at most {@value #CACHE_SIZE}.
+ */
+class LtlTranslator {
+
+    private static final int CACHE_SIZE = 256;
+
+    private enum Kind {TRUE, FALSE, AP, NOT_AP, AND, OR, NEXT, UNTIL, RELEASE}
+
+    private static final class Formula {
+        final Kind kind;
+        final Object ap;
+        final Formula left;
+        final Formula right;
+        final int hash;
+        int id;
+
+        Formula(Kind kind, Object ap, Formula left, Formula right) {
+            this.kind = kind;
+            this.ap = ap;
+            this.left = left;
+            this.right = right;
+            this.hash = Objects.hash(kind, ap, left, right);
+        }
+
+        // structural; the operands of formulas interned together are the same objects, which is quick to check
+        @Override
+        public boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (!(o instanceof Formula))
+                return false;
+            Formula other = (Formula) o;
+            return hash == other.hash && kind == other.kind && Objects.equals(ap, other.ap)
+                    && Objects.equals(left, other.left) && Objects.equals(right, other.right);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // a tableau node: the states it stands for come in through 'incoming'
+    private static final class Node {
+        final Set<Integer> incoming;
+        final BitSet fresh;
+        final BitSet old;
+        final BitSet next;
+        int state;
+
+        Node(Set<Integer> incoming, BitSet fresh, BitSet old, BitSet next) {
+            this.incoming = incoming;
+            this.fresh = fresh;
+            this.old = old;
+            this.next = next;
+        }
+
+        Node copy() {
+            return new Node(new HashSet<>(incoming), (BitSet) fresh.clone(), (BitSet) old.clone(), (BitSet) next.clone());
+        }
+    }
+
+    // the subformulas of the formula being translated, by id
+    private final Map<Formula, Formula> interned = new HashMap<>();
+    private final List<Formula> formulas = new ArrayList<>();
+    private final Map<Formula, GuardedAutomaton<?>> cache = new LinkedHashMap<Formula, GuardedAutomaton<?>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Formula, GuardedAutomaton<?>> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * @return an automaton accepting the words satisfying {@code ltl}, or its negation if {@code negate}.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <L> GuardedAutomaton<L> translate(LTL<L> ltl, boolean negate) {
+        try {
+            Formula formula = nnf(ltl, negate);
+            GuardedAutomaton<?> nba = cache.get(formula);
+            if (nba == null) {
+                nba = tableau(formula);
+                cache.put(formula, nba);
+            }
+            return (GuardedAutomaton<L>) nba;
+        } finally {
+            interned.clear();
+            formulas.clear();
+        }
+    }
+
+    private Formula nnf(LTL<?> ltl, boolean negated) {
+        if (ltl instanceof TRUE)
+            return make(negated ? Kind.FALSE : Kind.TRUE, null, null, null);
+        if (ltl instanceof AP)
+            return make(negated ? Kind.NOT_AP : Kind.AP, ((AP<?>) ltl).getName(), null, null);
+        if (ltl instanceof Not)
+            return nnf(((Not<?>) ltl).getInner(), !negated);
+        if (ltl instanceof And) {
+            Formula left = nnf(((And<?>) ltl).getLeft(), negated);
+            Formula right = nnf(((And<?>) ltl).getRight(), negated);
+            return negated ? or(left, right) : and(left, right);
+        }
+        if (ltl instanceof Next)
+            return next(nnf(((Next<?>) ltl).getInner(), negated));
+        if (ltl instanceof Until) {
+            Formula left = nnf(((Until<?>) ltl).getLeft(), negated);
+            Formula right = nnf(((Until<?>) ltl).getRight(), negated);
+            return negated ? release(left, right) : until(left, right);
+        }
+        throw new IllegalArgumentException("Unsupported LTL formula: " + ltl);
+    }
+
+    private Formula and(Formula a, Formula b) {
+        if (a.kind == Kind.FALSE || b.kind == Kind.FALSE)
+            return make(Kind.FALSE, null, null, null);
+        if (a.kind == Kind.TRUE || a == b)
+            return b;
+        if (b.kind == Kind.TRUE)
+            return a;
+        return a.id < b.id ? make(Kind.AND, null, a, b) : make(Kind.AND, null, b, a);
+    }
+
+    private Formula or(Formula a, Formula b) {
+        if (a.kind == Kind.TRUE || b.kind == Kind.TRUE)
+            return make(Kind.TRUE, null, null, null);
+        if (a.kind == Kind.FALSE || a == b)
+            return b;
+        if (b.kind == Kind.FALSE)
+            return a;
+        return a.id < b.id ? make(Kind.OR, null, a, b) : make(Kind.OR, null, b, a);
+    }
+
+    private Formula next(Formula a) {
+        return a.kind == Kind.TRUE || a.kind == Kind.FALSE ? a : make(Kind.NEXT, null, a, null);
+    }
+
+    // a U b
+    private Formula until(Formula a, Formula b) {
+        if (b.kind == Kind.TRUE || b.kind == Kind.FALSE || a.kind == Kind.FALSE || a == b)
+            return b;
+        return make(Kind.UNTIL, null, a, b);
+    }
+
+    // a R b: b holds up to and including the first position where a does, if any
+    private Formula release(Formula a, Formula b) {
+        if (b.kind == Kind.TRUE || b.kind == Kind.FALSE || a.kind == Kind.TRUE || a == b)
+            return b;
+        return make(Kind.RELEASE, null, a, b);
+    }
+
+    private Formula make(Kind kind, Object ap, Formula left, Formula right) {
+        Formula formula = new Formula(kind, ap, left, right);
+        Formula existing = interned.get(formula);
+        if (existing != null)
+            return existing;
+        formula.id = formulas.size();
+        formulas.add(formula);
+        interned.put(formula, formula);
+        return formula;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <L> GuardedAutomaton<L> tableau(Formula formula) {
+        // state 0 is the initial state, node i (from 0) is state i + 1
+        List<Node> nodes = new ArrayList<>();
+        Map<List<BitSet>, Node> byObligations = new HashMap<>();
+        Deque<Node> pending = new ArrayDeque<>();
+        BitSet start = new BitSet();
+        start.set(formula.id);
+        pending.push(new Node(new HashSet<>(Collections.singleton(0)), start, new BitSet(), new BitSet()));
+
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int i = node.fresh.nextSetBit(0);
+            if (i < 0) {
+                List<BitSet> obligations = Arrays.asList(node.old, node.next);
+                Node same = byObligations.get(obligations);
+                if (same != null) {
+                    same.incoming.addAll(node.incoming);
+                    continue;
+                }
+                nodes.add(node);
+                node.state = nodes.size();
+                byObligations.put(obligations, node);
+                pending.push(new Node(new HashSet<>(Collections.singleton(node.state)), (BitSet) node.next.clone(), new BitSet(), new BitSet()));
+                continue;
+            }
+
+            node.fresh.clear(i);
+            if (node.old.get(i)) {
+                pending.push(node);
+                continue;
+            }
+            Formula f = formulas.get(i);
+            node.old.set(i);
+            switch (f.kind) {
+                case FALSE:
+                    break;
+                case AP:
+                case NOT_AP:
+                    if (!node.old.get(make(f.kind == Kind.AP ? Kind.NOT_AP : Kind.AP, f.ap, null, null).id))
+                        pending.push(node);
+                    break;
+                case TRUE:
+                    pending.push(node);
+                    break;
+                case AND:
+                    node.fresh.set(f.left.id);
+                    node.fresh.set(f.right.id);
+                    pending.push(node);
+                    break;
+                case NEXT:
+                    node.next.set(f.left.id);
+                    pending.push(node);
+                    break;
+                default: {
+                    Node other = node.copy();
+                    if (f.kind == Kind.OR) {
+                        node.fresh.set(f.left.id);
+                        other.fresh.set(f.right.id);
+                    } else if (f.kind == Kind.UNTIL) {
+                        node.fresh.set(f.left.id);
+                        node.next.set(i);
+                        other.fresh.set(f.right.id);
+                    } else {
+                        node.fresh.set(f.right.id);
+                        node.next.set(i);
+                        other.fresh.set(f.left.id);
+                        other.fresh.set(f.right.id);
+                    }
+                    pending.push(other);
+                    pending.push(node);
+                }
+            }
+        }
+
+        // transitions into a node read the symbols its literals allow
+        Map<Integer, Map<GuardedAutomaton.Guard<L>, Set<Integer>>> delta = new HashMap<>();
+        BitSet untils = new BitSet();
+        for (Node node : nodes) {
+            Set<L> positive = new HashSet<>();
+            Set<L> negative = new HashSet<>();
+            for (int i = node.old.nextSetBit(0); i >= 0; i = node.old.nextSetBit(i + 1)) {
+                Formula f = formulas.get(i);
+                if (f.kind == Kind.AP)
+                    positive.add((L) f.ap);
+                else if (f.kind == Kind.NOT_AP)
+                    negative.add((L) f.ap);
+                else if (f.kind == Kind.UNTIL)
+                    untils.set(i);
+            }
+            GuardedAutomaton.Guard<L> guard = new GuardedAutomaton.Guard<>(positive, negative);
+            for (int q : node.incoming)
+                delta.computeIfAbsent(q, k -> new HashMap<>()).computeIfAbsent(guard, g -> new HashSet<>()).add(node.state);
+        }
+
+        // a U b is fulfilled in the nodes that don't promise it, or keep the promise
+        List<Set<Integer>> acceptance = new ArrayList<>();
+        for (int u = untils.nextSetBit(0); u >= 0; u = untils.nextSetBit(u + 1)) {
+            Set<Integer> fulfilled = new HashSet<>();
+            for (Node node : nodes)
+                if (!node.old.get(u) || node.old.get(formulas.get(u).right.id))
+                    fulfilled.add(node.state);
+            acceptance.add(fulfilled);
+        }
+
+        GuardedAutomaton<L> nba = new GuardedAutomaton<>();
+        Degeneralization.degeneralize(Collections.singleton(0), q -> delta.getOrDefault(q, Collections.emptyMap()),
+                acceptance, (q, copy) -> nba.addState(), new Degeneralization.Builder<Integer, GuardedAutomaton.Guard<L>>() {
+                    @Override
+                    public void addTransition(Integer from, GuardedAutomaton.Guard<L> guard, Integer to) {
+                        nba.addTransition(from, guard, to);
+                    }
+
+                    @Override
+                    public void setInitial(Integer state) {
+                        nba.setInitial(state);
+                    }
+
+                    @Override
+                    public void setAccepting(Integer state) {
+                        nba.setAccepting(state);
+                    }
+                });
+        return nba;
+    }
+
+    /**
+     * @return the propositions {@code ltl} mentions, including any its normal form simplifies away.
+     */
+    static <L> Set<L> atomicPropositions(LTL<L> ltl) {
+        Set<L> atomicPropositions = new LinkedHashSet<>();
+        Deque<LTL<L>> pending = new ArrayDeque<>();
+        pending.push(ltl);
+        while (!pending.isEmpty()) {
+            LTL<L> f = pending.pop();
+            if (f instanceof AP) {
+                atomicPropositions.add(((AP<L>) f).getName());
+            } else if (f instanceof Not) {
+                pending.push(((Not<L>) f).getInner());
+            } else if (f instanceof Next) {
+                pending.push(((Next<L>) f).getInner());
+            } else if (f instanceof And) {
+                pending.push(((And<L>) f).getRight());
+                pending.push(((And<L>) f).getLeft());
+            } else if (f instanceof Until) {
+                pending.push(((Until<L>) f).getRight());
+                pending.push(((Until<L>) f).getLeft());
+            }
+        }
+        return atomicPropositions;
+    }
+}
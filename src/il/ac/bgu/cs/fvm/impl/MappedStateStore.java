@@ -0,0 +1,258 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Keeps the visited states off the heap, in memory mapped files, so an exploration can see more states
+ * than the heap could hold. The operating system pages the files in and out as needed, which is what
+ * spills the store to disk once it outgrows memory.
+ * <p>
+ * Each state is reduced to its {@link CanonicalBytes canonical encoding}, appended to a data file. An open
+ * addressing hash table (linear probing, at most half full, doubled when it is) maps the encodings to
+ * their place in the data file. A slot is 16 bytes: the data offset plus one (0 marks an empty slot), the
+ * hash of the encoding and its length; the hash is compared before the bytes, and growing the table
+ * never reads the data file. Both files are mapped in 64MB segments.
+ * <p>
+ * States must be values {@link CanonicalBytes} can encode (strings, numbers, booleans, pairs, lists, sets
+ * and maps of these). The files live in a directory of their own, and are deleted by {@link #close()};
+ * a mapped file can't be unmapped before the garbage collector releases its buffers, and where the
+ * system refuses to delete a mapped file (Windows) it is deleted when the JVM exits instead. Other I/O
+ * errors surface as {@link UncheckedIOException}s.
+ */
+public class MappedStateStore implements StateStore {
+
+    private static final int SEGMENT_BYTES = 1 << 26;
+    private static final int SLOT_BYTES = 16;
+    private static final int SLOTS_PER_SEGMENT = SEGMENT_BYTES / SLOT_BYTES;
+    private static final long INITIAL_CAPACITY = 1 << 16;
+
+    private final Path directory;
+    private final boolean ownsDirectory;
+
+    private final FileChannel data;
+    private final Path dataFile;
+    private final List<MappedByteBuffer> dataSegments = new ArrayList<>();
+    private long dataEnd;
+
+    private FileChannel table;
+    private Path tableFile;
+    private List<MappedByteBuffer> tableSegments;
+    private long capacity;
+    private long size;
+    // old tables the system refused to delete while they were mapped
+    private final List<Path> undeleted = new ArrayList<>();
+
+    /**
+     * Keeps the files in a new temporary directory, deleted on {@link #close()}.
+     */
+    public MappedStateStore() {
+        this(createTempDirectory(), true);
+    }
+
+    /**
+     * Keeps the files in {@code directory}, which must exist and should be on a disk large enough for
+     * the state space.
+     */
+    public MappedStateStore(Path directory) {
+        this(directory, false);
+    }
+
+    private MappedStateStore(Path directory, boolean ownsDirectory) {
+        this.directory = directory;
+        this.ownsDirectory = ownsDirectory;
+        try {
+            dataFile = Files.createTempFile(directory, "states", ".data");
+            data = FileChannel.open(dataFile, READ, WRITE);
+            openTable(INITIAL_CAPACITY);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean add(Object state) {
+        byte[] bytes = CanonicalBytes.of(state);
+        int hash = hash(bytes);
+        long slot = find(bytes, hash);
+        if (offset(slot) != 0)
+            return false;
+        writeSlot(slot, append(bytes) + 1, hash, bytes.length);
+        if (++size * 2 > capacity)
+            grow();
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object state) {
+        byte[] bytes = CanonicalBytes.of(state);
+        return offset(find(bytes, hash(bytes))) != 0;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void close() {
+        dataSegments.clear();
+        tableSegments = null;
+        try {
+            data.close();
+            table.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        undeleted.add(dataFile);
+        undeleted.add(tableFile);
+        undeleted.removeIf(MappedStateStore::delete);
+        // what is left goes when the JVM exits; the directory is registered first, so it is deleted last
+        if (ownsDirectory && (!undeleted.isEmpty() || !delete(directory)))
+            directory.toFile().deleteOnExit();
+        for (Path file : undeleted)
+            file.toFile().deleteOnExit();
+    }
+
+    // the slot holding 'bytes', or the empty slot where they belong
+    private long find(byte[] bytes, int hash) {
+        long mask = capacity - 1;
+        for (long slot = (hash & 0xFFFFFFFFL) & mask; ; slot = (slot + 1) & mask) {
+            long offset = offset(slot);
+            if (offset == 0)
+                return slot;
+            ByteBuffer segment = tableSegment(slot);
+            int position = position(slot);
+            if (segment.getInt(position + 8) == hash && segment.getInt(position + 12) == bytes.length
+                    && matches(offset - 1, bytes))
+                return slot;
+        }
+    }
+
+    private void grow() {
+        FileChannel oldTable = table;
+        Path oldFile = tableFile;
+        List<MappedByteBuffer> oldSegments = tableSegments;
+        long oldCapacity = capacity;
+        try {
+            openTable(capacity * 2);
+            long mask = capacity - 1;
+            for (long old = 0; old < oldCapacity; old++) {
+                ByteBuffer segment = oldSegments.get((int) (old / SLOTS_PER_SEGMENT));
+                int position = (int) (old % SLOTS_PER_SEGMENT) * SLOT_BYTES;
+                long offset = segment.getLong(position);
+                if (offset == 0)
+                    continue;
+                int hash = segment.getInt(position + 8);
+                long slot = (hash & 0xFFFFFFFFL) & mask;
+                while (offset(slot) != 0)
+                    slot = (slot + 1) & mask;
+                writeSlot(slot, offset, hash, segment.getInt(position + 12));
+            }
+            oldTable.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!delete(oldFile))
+            undeleted.add(oldFile);
+    }
+
+    // best effort: a file still mapped may not be deletable yet
+    private static boolean delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void openTable(long capacity) throws IOException {
+        this.capacity = capacity;
+        tableFile = Files.createTempFile(directory, "states", ".table");
+        table = FileChannel.open(tableFile, READ, WRITE);
+        tableSegments = new ArrayList<>();
+        for (long first = 0; first < capacity; first += SLOTS_PER_SEGMENT) {
+            long bytes = Math.min(SLOTS_PER_SEGMENT, capacity - first) * SLOT_BYTES;
+            tableSegments.add(table.map(FileChannel.MapMode.READ_WRITE, first * SLOT_BYTES, bytes));
+        }
+    }
+
+    private ByteBuffer tableSegment(long slot) {
+        return tableSegments.get((int) (slot / SLOTS_PER_SEGMENT));
+    }
+
+    private static int position(long slot) {
+        return (int) (slot % SLOTS_PER_SEGMENT) * SLOT_BYTES;
+    }
+
+    private long offset(long slot) {
+        return tableSegment(slot).getLong(position(slot));
+    }
+
+    private void writeSlot(long slot, long offset, int hash, int length) {
+        ByteBuffer segment = tableSegment(slot);
+        int position = position(slot);
+        segment.putLong(position, offset);
+        segment.putInt(position + 8, hash);
+        segment.putInt(position + 12, length);
+    }
+
+    // appends to the data file, never across a segment boundary; returns where the bytes start
+    private long append(byte[] bytes) {
+        if (bytes.length > SEGMENT_BYTES)
+            throw new IllegalArgumentException("State encoding too large: " + bytes.length + " bytes");
+        if (SEGMENT_BYTES - dataEnd % SEGMENT_BYTES < bytes.length)
+            dataEnd += SEGMENT_BYTES - dataEnd % SEGMENT_BYTES;
+        int index = (int) (dataEnd / SEGMENT_BYTES);
+        try {
+            while (dataSegments.size() <= index)
+                dataSegments.add(data.map(FileChannel.MapMode.READ_WRITE, (long) dataSegments.size() * SEGMENT_BYTES, SEGMENT_BYTES));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ByteBuffer segment = dataSegments.get(index).duplicate();
+        segment.position((int) (dataEnd % SEGMENT_BYTES));
+        segment.put(bytes);
+        long start = dataEnd;
+        dataEnd += bytes.length;
+        return start;
+    }
+
+    private boolean matches(long start, byte[] bytes) {
+        ByteBuffer segment = dataSegments.get((int) (start / SEGMENT_BYTES));
+        int position = (int) (start % SEGMENT_BYTES);
+        for (int i = 0; i < bytes.length; i++)
+            if (segment.get(position + i) != bytes[i])
+                return false;
+        return true;
+    }
+
+    // FNV-1a, with a final mix so the low bits used for the slot depend on every byte
+    private static int hash(byte[] bytes) {
+        int h = 0x811C9DC5;
+        for (byte b : bytes)
+            h = (h ^ (b & 0xFF)) * 0x01000193;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private static Path createTempDirectory() {
+        try {
+            return Files.createTempDirectory("fvm-states");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Nested depth first search (Courcoubetis, Vardi, Wolper, Yannakakis) for an accepting cycle in a
+ * {@link LazyProduct}. The outer search explores the product; whenever it backtracks from a state with
+ * an accepting automaton component, an inner search looks for a path leading back to that state.
+ * Inner searches share their visited set, so every product state is expanded at most twice.
+ * <p>
+ * Both searches use explicit stacks, and product states are generated only as the search reaches them,
+ * so the memory used is proportional to the explored part of the product. The search stops at the first
+ * accepting cycle found.
+ * <p>
+ * The two visited sets are {@link StateStore}s. With an approximate one, such as a {@link BitStateStore},
+ * some states may go unexplored: a cycle found is still a real one, but an accepting cycle may be missed.
+ */
+class NestedDepthFirstSearch<S, Saut> {
+
+    private final LazyProduct<S, ?, ?, Saut> product;
+    private final Set<Saut> accepting;
+    private final Supplier<? extends StateStore> stateStores;
+
+    private List<Pair<S, Saut>> prefix;
+    private List<Pair<S, Saut>> cycle;
+
+    NestedDepthFirstSearch(LazyProduct<S, ?, ?, Saut> product, Set<Saut> accepting, Supplier<? extends StateStore> stateStores) {
+        this.product = product;
+        this.accepting = accepting;
+        this.stateStores = stateStores;
+    }
+
+    /**
+     * @return {@code true} iff an accepting cycle is reachable. The witness is then available through
+     * {@link #getPrefix()} and {@link #getCycle()}.
+     */
+    boolean run() {
+        try (StateStore outerVisited = stateStores.get(); StateStore innerVisited = stateStores.get()) {
+            return run(outerVisited, innerVisited);
+        }
+    }
+
+    private boolean run(StateStore outerVisited, StateStore innerVisited) {
+        Deque<Frame<S, Saut>> outer = new ArrayDeque<>();
+
+        for (Pair<S, Saut> initial : product.initialStates()) {
+            if (!outerVisited.add(initial))
+                continue;
+            outer.push(new Frame<>(initial, product.successors(initial)));
+
+            while (!outer.isEmpty()) {
+                Frame<S, Saut> top = outer.peek();
+                if (top.successors.hasNext()) {
+                    Pair<S, Saut> next = top.successors.next();
+                    if (outerVisited.add(next))
+                        outer.push(new Frame<>(next, product.successors(next)));
+                    continue;
+                }
+                if (accepting.contains(top.state.second)) {
+                    List<Pair<S, Saut>> loop = innerSearch(top.state, innerVisited);
+                    if (loop != null) {
+                        prefix = new ArrayList<>();
+                        Iterator<Frame<S, Saut>> path = outer.descendingIterator();
+                        while (path.hasNext()) {
+                            Frame<S, Saut> frame = path.next();
+                            if (frame != top)
+                                prefix.add(frame.state);
+                        }
+                        cycle = loop;
+                        return true;
+                    }
+                }
+                outer.pop();
+            }
+        }
+        return false;
+    }
+
+    // looks for a path from seed back to itself; returns it (seed first, without repeating it at the end) or null
+    private List<Pair<S, Saut>> innerSearch(Pair<S, Saut> seed, StateStore visited) {
+        Deque<Frame<S, Saut>> inner = new ArrayDeque<>();
+        visited.add(seed);
+        inner.push(new Frame<>(seed, product.successors(seed)));
+
+        while (!inner.isEmpty()) {
+            Frame<S, Saut> top = inner.peek();
+            if (!top.successors.hasNext()) {
+                inner.pop();
+                continue;
+            }
+            Pair<S, Saut> next = top.successors.next();
+            if (next.equals(seed)) {
+                List<Pair<S, Saut>> loop = new ArrayList<>();
+                Iterator<Frame<S, Saut>> path = inner.descendingIterator();
+                while (path.hasNext())
+                    loop.add(path.next().state);
+                return loop;
+            }
+            if (visited.add(next))
+                inner.push(new Frame<>(next, product.successors(next)));
+        }
+        return null;
+    }
+
+    /**
+     * @return the product states leading from an initial state up to (excluding) the first state of the cycle.
+     */
+    List<Pair<S, Saut>> getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @return the product states of the accepting cycle, starting at an accepting state.
+     */
+    List<Pair<S, Saut>> getCycle() {
+        return cycle;
+    }
+
+    private static class Frame<S, Saut> {
+        final Pair<S, Saut> state;
+        final Iterator<Pair<S, Saut>> successors;
+
+        Frame(Pair<S, Saut> state, Set<Pair<S, Saut>> successors) {
+            this.state = state;
+            this.successors = successors.iterator();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.channelsystem.InterleavingActDef;
+import il.ac.bgu.cs.fvm.programgraph.PGTransition;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+
+import java.util.*;
+
+/**
+ * The static part of an ample set reduction for a channel system: at which locations the steps of a
+ * process may be explored alone, the other processes' steps being postponed.
+ * <p>
+ * The steps leaving location {@code l} of process {@code i} qualify when each of them
+ * <ul>
+ * <li>is independent of every step of every other process: it writes no variable (or channel) another
+ * process reads or writes, and reads none another process writes. So no other process can enable,
+ * disable or be affected by it, nor change the outcome of the steps at {@code l} - the ample set
+ * conditions C0 and C1, since {@code l} is left by any step of {@code i};</li>
+ * <li>is not a handshake, which would involve a second process;</li>
+ * <li>writes no observed variable, so it is invisible to the properties to preserve (C2).</li>
+ * </ul>
+ * The read and write sets come from {@link CompiledExpressions}, and over-approximate for anything it
+ * doesn't compile. The cycle proviso (C3) depends on the search, and is left to the explorer.
+ * <p>
+ * The reduced transition system preserves the stutter invariant properties (LTL without next) over the
+ * {@code "var = value"} propositions of the observed variables; the location propositions are not
+ * preserved.
+ */
+class PartialOrderReduction<L, A> {
+
+    private final List<Map<L, Boolean>> independent = new ArrayList<>();
+
+    PartialOrderReduction(List<ProgramGraph<L, A>> pgs, InterleavingActDef sync, Set<String> observed) {
+        List<Set<String>> reads = new ArrayList<>();
+        List<Set<String>> writes = new ArrayList<>();
+        for (ProgramGraph<L, A> pg : pgs) {
+            Set<String> read = new HashSet<>();
+            Set<String> written = new HashSet<>();
+            for (PGTransition<L, A> t : pg.getTransitions()) {
+                read.addAll(reads(t));
+                written.addAll(writes(t));
+            }
+            reads.add(read);
+            writes.add(written);
+        }
+
+        for (int i = 0; i < pgs.size(); i++) {
+            Set<String> othersRead = new HashSet<>();
+            Set<String> othersWritten = new HashSet<>();
+            for (int j = 0; j < pgs.size(); j++) {
+                if (j != i) {
+                    othersRead.addAll(reads.get(j));
+                    othersWritten.addAll(writes.get(j));
+                }
+            }
+
+            Map<L, Boolean> byLocation = new HashMap<>();
+            for (L l : pgs.get(i).getLocations())
+                byLocation.put(l, Boolean.TRUE);
+            for (PGTransition<L, A> t : pgs.get(i).getTransitions()) {
+                Set<String> read = reads(t);
+                Set<String> written = writes(t);
+                boolean safe = !sync.isOneSidedAction(String.valueOf(t.getAction()))
+                        && Collections.disjoint(written, othersRead)
+                        && Collections.disjoint(written, othersWritten)
+                        && Collections.disjoint(read, othersWritten)
+                        && Collections.disjoint(written, observed);
+                if (!safe)
+                    byLocation.put(t.getFrom(), Boolean.FALSE);
+            }
+            independent.add(byLocation);
+        }
+    }
+
+    /**
+     * @return whether the enabled steps of process {@code index} at {@code location} may form an ample set
+     * on their own.
+     */
+    boolean isAmpleCandidate(int index, L location) {
+        return independent.get(index).getOrDefault(location, Boolean.FALSE);
+    }
+
+    private static Set<String> reads(PGTransition<?, ?> t) {
+        Set<String> read = new HashSet<>();
+        if (t.getCondition() != null)
+            read.addAll(CompiledExpressions.variablesRead(t.getCondition()));
+        if (t.getAction() != null)
+            read.addAll(CompiledExpressions.variablesRead(t.getAction().toString()));
+        return read;
+    }
+
+    private static Set<String> writes(PGTransition<?, ?> t) {
+        return t.getAction() == null ? Collections.emptySet() : CompiledExpressions.variablesWritten(t.getAction().toString());
+    }
+}
@@ -0,0 +1,209 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Describes {@code n} identical processes, with ids {@code 1..n}, interleaved into one program graph, so
+ * that exploring it can keep a single representative of every set of states equal up to a permutation
+ * of the process ids.
+ * <p>
+ * A permutation {@code p} maps a state to the state where process {@code p(i)} is where process
+ * {@code i} was: at the corresponding location (locations of different processes correspond when the
+ * {@code locationTemplate} maps them alike, e.g. {@code noncrit1} and {@code noncrit2} both to
+ * {@code noncrit}), with the values of {@code i}'s own variables (the {@code processVariables} of
+ * process {@code i}, matched by position), and every variable in {@code idVariables} holding a process
+ * id {@code i} holds {@code p(i)} instead. Other variables are left alone.
+ * <p>
+ * The representative is the least image, by {@link CanonicalBytes} order, among the permutations that
+ * sort the processes by their own location and variables; only processes tied on those are tried in
+ * every order, so most states cost one image rather than {@code n!}. The orbit of a state always yields
+ * the same set of images, hence the same representative.
+ * <p>
+ * The processes are the components of the interleaved locations, in order: a list of {@code n}
+ * locations (as built by {@code interleaveProgramGraphs}) or left nested pairs (as built by repeated
+ * {@code interleave}). Only properties that are themselves symmetric are preserved.
+ */
+public class ProcessSymmetry {
+
+    private final int processes;
+    private final Function<Object, Object> locationTemplate;
+    private final List<List<String>> processVariables;
+    private final Set<String> idVariables;
+
+    /**
+     * @param processes        the number of processes, {@code n}.
+     * @param locationTemplate maps each process's location to what it is in every process.
+     * @param processVariables the own variables of each process, one list per process in id order, all of
+     *                         the same length; may be empty if the processes have none.
+     * @param idVariables      the variables whose values are process ids.
+     */
+    public ProcessSymmetry(int processes, Function<Object, Object> locationTemplate,
+                           List<List<String>> processVariables, Set<String> idVariables) {
+        if (processes < 1)
+            throw new IllegalArgumentException("processes must be positive: " + processes);
+        if (!processVariables.isEmpty() && processVariables.size() != processes)
+            throw new IllegalArgumentException("Expected the variables of " + processes + " processes, got " + processVariables.size());
+        for (List<String> variables : processVariables)
+            if (variables.size() != processVariables.get(0).size())
+                throw new IllegalArgumentException("Every process must have as many variables: " + processVariables);
+        this.processes = processes;
+        this.locationTemplate = locationTemplate;
+        this.processVariables = processVariables;
+        this.idVariables = idVariables;
+    }
+
+    /**
+     * @return a thread safe function mapping states of {@code pg}'s transition system to their
+     * representatives.
+     */
+    <L> UnaryOperator<Pair<L, Map<String, Object>>> canonicalizer(ProgramGraph<L, ?> pg) {
+        // location of every process, by template
+        List<Map<Object, Object>> locations = new ArrayList<>();
+        for (int i = 0; i < processes; i++)
+            locations.add(new HashMap<>());
+        for (L location : pg.getLocations()) {
+            List<Object> components = components(location);
+            for (int i = 0; i < processes; i++)
+                locations.get(i).put(locationTemplate.apply(components.get(i)), components.get(i));
+        }
+        return state -> canonical(state, locations);
+    }
+
+    private <L> Pair<L, Map<String, Object>> canonical(Pair<L, Map<String, Object>> state, List<Map<Object, Object>> locations) {
+        List<Object> components = components(state.first);
+        boolean isList = state.first instanceof List;
+
+        // processes sorted by what they look like on their own; ties are the only freedom left
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < processes; i++) {
+            List<Object> key = new ArrayList<>();
+            key.add(locationTemplate.apply(components.get(i)));
+            if (!processVariables.isEmpty())
+                for (String variable : processVariables.get(i))
+                    key.add(state.second.get(variable));
+            keys.add(CanonicalBytes.of(key));
+        }
+        Integer[] order = new Integer[processes];
+        for (int i = 0; i < processes; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> CanonicalBytes.compare(keys.get(a), keys.get(b)));
+
+        Pair<L, Map<String, Object>> best = null;
+        byte[] bestBytes = null;
+        for (int[] slots : sortingPermutations(order, keys)) {
+            // process order[k] moves to the k-th place of slots
+            int[] target = new int[processes];
+            for (int k = 0; k < processes; k++)
+                target[order[k]] = slots[k];
+            Pair<L, Map<String, Object>> image = image(state, components, isList, target, locations);
+            byte[] bytes = CanonicalBytes.of(image);
+            if (best == null || CanonicalBytes.compare(bytes, bestBytes) < 0) {
+                best = image;
+                bestBytes = bytes;
+            }
+        }
+        return best.equals(state) ? state : best;
+    }
+
+    // for every run of tied keys in 'order', every arrangement of its places
+    private List<int[]> sortingPermutations(Integer[] order, List<byte[]> keys) {
+        List<int[]> result = new ArrayList<>();
+        int[] identity = new int[processes];
+        for (int k = 0; k < processes; k++)
+            identity[k] = k;
+        result.add(identity);
+        int start = 0;
+        while (start < processes) {
+            int end = start + 1;
+            while (end < processes && Arrays.equals(keys.get(order[start]), keys.get(order[end])))
+                end++;
+            if (end - start > 1) {
+                List<int[]> extended = new ArrayList<>();
+                for (int[] base : result)
+                    permute(base.clone(), start, end, extended);
+                result = extended;
+            }
+            start = end;
+        }
+        return result;
+    }
+
+    private static void permute(int[] slots, int from, int end, List<int[]> out) {
+        if (from == end - 1) {
+            out.add(slots.clone());
+            return;
+        }
+        for (int i = from; i < end; i++) {
+            swap(slots, from, i);
+            permute(slots, from + 1, end, out);
+            swap(slots, from, i);
+        }
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    // the state with process i moved to process target[i]
+    @SuppressWarnings("unchecked")
+    private <L> Pair<L, Map<String, Object>> image(Pair<L, Map<String, Object>> state, List<Object> components, boolean isList,
+                                                   int[] target, List<Map<Object, Object>> locations) {
+        Object[] moved = new Object[processes];
+        for (int i = 0; i < processes; i++) {
+            moved[target[i]] = locations.get(target[i]).get(locationTemplate.apply(components.get(i)));
+            if (moved[target[i]] == null)
+                throw new IllegalArgumentException("Process " + (target[i] + 1) + " has no location like " + components.get(i));
+        }
+
+        Map<String, Object> eval = new HashMap<>(state.second);
+        if (!processVariables.isEmpty())
+            for (int i = 0; i < processes; i++)
+                for (int v = 0; v < processVariables.get(i).size(); v++)
+                    put(eval, processVariables.get(target[i]).get(v), state.second.get(processVariables.get(i).get(v)));
+        for (String variable : idVariables) {
+            Object value = state.second.get(variable);
+            if (value instanceof Integer && (Integer) value >= 1 && (Integer) value <= processes)
+                eval.put(variable, target[(Integer) value - 1] + 1);
+        }
+        return new Pair<>((L) location(Arrays.asList(moved), isList), eval);
+    }
+
+    private static void put(Map<String, Object> eval, String variable, Object value) {
+        if (value == null)
+            eval.remove(variable);
+        else
+            eval.put(variable, value);
+    }
+
+    private List<Object> components(Object location) {
+        if (location instanceof List && ((List<?>) location).size() == processes)
+            return new ArrayList<>((List<?>) location);
+        List<Object> components = new ArrayList<>();
+        Object rest = location;
+        for (int i = processes - 1; i > 0; i--) {
+            if (!(rest instanceof Pair))
+                throw new IllegalArgumentException("Expected the locations of " + processes + " interleaved processes: " + location);
+            components.add(((Pair<?, ?>) rest).second);
+            rest = ((Pair<?, ?>) rest).first;
+        }
+        components.add(rest);
+        Collections.reverse(components);
+        return components;
+    }
+
+    private static Object location(List<Object> components, boolean isList) {
+        if (isList)
+            return Collections.unmodifiableList(new ArrayList<>(components));
+        Object location = components.get(0);
+        for (int i = 1; i < components.size(); i++)
+            location = new Pair<>(location, components.get(i));
+        return location;
+    }
+}
@@ -0,0 +1,36 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.programgraph.PGTransition;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+
+import java.util.*;
+
+/**
+ * The edges leaving each location of any {@link ProgramGraph}. {@link ProgramGraphImpl} is already
+ * indexed and is used as is; for any other implementation the index is built once, up front, so lookups
+ * are safe from several threads.
+ */
+class ProgramGraphAdjacency<L, A> {
+
+    private final ProgramGraphImpl<L, A> indexed;
+    private final Map<L, List<PGTransition<L, A>>> index;
+
+    ProgramGraphAdjacency(ProgramGraph<L, A> pg) {
+        if (pg instanceof ProgramGraphImpl) {
+            indexed = (ProgramGraphImpl<L, A>) pg;
+            index = null;
+        } else {
+            indexed = null;
+            index = new HashMap<>();
+            for (PGTransition<L, A> t : pg.getTransitions())
+                index.computeIfAbsent(t.getFrom(), k -> new ArrayList<>()).add(t);
+        }
+    }
+
+    Collection<PGTransition<L, A>> outgoing(L l) {
+        if (indexed != null)
+            return indexed.outgoing(l);
+        List<PGTransition<L, A>> out = index.get(l);
+        return out == null ? Collections.emptyList() : out;
+    }
+}
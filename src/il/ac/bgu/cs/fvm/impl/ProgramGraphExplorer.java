@@ -0,0 +1,213 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.programgraph.ActionDef;
+import il.ac.bgu.cs.fvm.programgraph.ConditionDef;
+import il.ac.bgu.cs.fvm.programgraph.PGTransition;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Unfolds a program graph into a transition system whose states are (location, evaluation) pairs.
+ * <p>
+ * The exploration is either sequential (a depth first worklist), or parallel: a level synchronous
+ * breadth first search where the states of every level are expanded on a {@link ForkJoinPool}, while
+ * the coordinating thread alone marks the successors visited and adds them to the transition system, so
+ * each state is expanded exactly once. Both produce the same transition system. The parallel mode
+ * evaluates the action and condition definitions from several threads at once, so they must be thread
+ * safe (the parser based ones are).
+ * <p>
+ * Conditions and actions are evaluated through an {@link EvaluationCache}, so each distinct string of
+ * the graph is parsed once rather than once per state. The transition system being built is the visited
+ * set, unless the {@link StateStore} is approximate (see {@link StateStores#forExplorations}).
+ * <p>
+ * With a symmetry, every state is replaced by its representative as soon as it is generated, so only
+ * one state per orbit is ever stored or expanded.
+ */
+class ProgramGraphExplorer<L, A> {
+
+    private final ProgramGraph<L, A> pg;
+    private final Set<ActionDef> actionDefs;
+    private final Set<ConditionDef> conditionDefs;
+    private final ProgramGraphAdjacency<L, A> edges;
+    private final EvaluationCache evaluations;
+    private final Function<TransitionSystem<?, ?, ?>, StateStore> visitedSets;
+    private UnaryOperator<Pair<L, Map<String, Object>>> representative = UnaryOperator.identity();
+
+    ProgramGraphExplorer(ProgramGraph<L, A> pg, Set<ActionDef> actionDefs, Set<ConditionDef> conditionDefs,
+                         Function<TransitionSystem<?, ?, ?>, StateStore> visitedSets) {
+        this.pg = pg;
+        this.visitedSets = visitedSets;
+        this.actionDefs = actionDefs;
+        this.conditionDefs = conditionDefs;
+        this.edges = new ProgramGraphAdjacency<>(pg);
+        this.evaluations = new EvaluationCache(actionDefs, conditionDefs);
+    }
+
+    /**
+     * Explores the quotient under {@code symmetry}, instead of the full state space.
+     */
+    void reduceSymmetry(ProcessSymmetry symmetry) {
+        UnaryOperator<Pair<L, Map<String, Object>>> canonicalizer = symmetry.canonicalizer(pg);
+        representative = state -> {
+            Pair<L, Map<String, Object>> canonical = canonicalizer.apply(state);
+            return canonical == state ? state : new Pair<>(canonical.first, evaluations.compact(canonical.second));
+        };
+    }
+
+    /**
+     * @return the initial locations, paired with the evaluation of every initialization list.
+     */
+    Set<Pair<L, Map<String, Object>>> initialStates() {
+        Set<Map<String, Object>> state_maps = new HashSet<>();
+        for (List<String> initialization_list : pg.getInitalizations()) {
+            Map<String, Object> state_map = new HashMap<>();
+            for (String init_string : initialization_list) {
+                for (ActionDef ad : actionDefs) {
+                    if (ad.isMatchingAction(init_string)) {
+                        state_map = ad.effect(state_map, init_string);
+                    }
+                }
+            }
+            state_maps.add(evaluations.compact(state_map));
+        }
+        if (state_maps.size() == 0) {
+            state_maps.add(evaluations.compact(new HashMap<>()));
+        }
+
+        Set<Pair<L, Map<String, Object>>> initials = new LinkedHashSet<>();
+        for (Map<String, Object> state_map : state_maps)
+            for (L init_loc : pg.getInitialLocations())
+                initials.add(representative.apply(new Pair<>(init_loc, state_map)));
+        return initials;
+    }
+
+    /**
+     * @return the transitions leaving {@code state}: one per enabled program graph edge. Thread safe.
+     */
+    List<Transition<Pair<L, Map<String, Object>>, A>> successors(Pair<L, Map<String, Object>> state) {
+        List<Transition<Pair<L, Map<String, Object>>, A>> transitions = new ArrayList<>();
+        for (PGTransition<L, A> pg_transition : edges.outgoing(state.first)) {
+            if (!evaluations.evaluate(state.second, pg_transition.getCondition()))
+                continue;
+            Map<String, Object> new_state = evaluations.effect(state.second, pg_transition.getAction());
+            if (new_state != null)
+                transitions.add(new Transition<>(state, pg_transition.getAction(), representative.apply(new Pair<>(pg_transition.getTo(), new_state))));
+        }
+        return transitions;
+    }
+
+    TransitionSystem<Pair<L, Map<String, Object>>, A, String> explore() {
+        TransitionSystem<Pair<L, Map<String, Object>>, A, String> ts = newTransitionSystem();
+        Deque<Pair<L, Map<String, Object>>> to_work_on = new ArrayDeque<>();
+
+        try (StateStore visited = visitedSets.apply(ts)) {
+            for (Pair<L, Map<String, Object>> initial : initialStates()) {
+                if (visited.add(initial)) {
+                    addState(ts, initial);
+                    to_work_on.push(initial);
+                } else if (isOmitted(visited, ts, initial)) {
+                    continue;
+                }
+                ts.setInitial(initial, true);
+            }
+
+            while (!to_work_on.isEmpty()) {
+                for (Transition<Pair<L, Map<String, Object>>, A> transition : successors(to_work_on.pop())) {
+                    // states are marked on discovery, so none is expanded twice
+                    if (visited.add(transition.getTo())) {
+                        addState(ts, transition.getTo());
+                        to_work_on.push(transition.getTo());
+                    } else if (isOmitted(visited, ts, transition.getTo())) {
+                        continue;
+                    }
+                    ts.addAction(transition.getAction());
+                    ts.addTransition(transition);
+                }
+            }
+        }
+        return ts;
+    }
+
+    /**
+     * Explores level by level, expanding the states of each level on {@code parallelism} threads.
+     */
+    TransitionSystem<Pair<L, Map<String, Object>>, A, String> exploreParallel(int parallelism) {
+        TransitionSystem<Pair<L, Map<String, Object>>, A, String> ts = newTransitionSystem();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        // only this thread marks states visited, so the store needn't be thread safe
+        try (StateStore visited = visitedSets.apply(ts)) {
+            List<Pair<L, Map<String, Object>>> level = new ArrayList<>();
+            for (Pair<L, Map<String, Object>> initial : initialStates()) {
+                if (visited.add(initial)) {
+                    addState(ts, initial);
+                    level.add(initial);
+                } else if (isOmitted(visited, ts, initial)) {
+                    continue;
+                }
+                ts.setInitial(initial, true);
+            }
+
+            while (!level.isEmpty()) {
+                List<Pair<L, Map<String, Object>>> current = level;
+                // only the expansion runs in parallel; the transition system itself is filled in by this thread
+                List<Transition<Pair<L, Map<String, Object>>, A>> transitions = pool.submit(() -> current.parallelStream()
+                        .flatMap(state -> successors(state).stream())
+                        .collect(Collectors.toList())).get();
+
+                level = new ArrayList<>();
+                for (Transition<Pair<L, Map<String, Object>>, A> transition : transitions) {
+                    if (visited.add(transition.getTo())) {
+                        addState(ts, transition.getTo());
+                        level.add(transition.getTo());
+                    } else if (isOmitted(visited, ts, transition.getTo())) {
+                        continue;
+                    }
+                    ts.addAction(transition.getAction());
+                    ts.addTransition(transition);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Program graph exploration was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return ts;
+    }
+
+    private TransitionSystem<Pair<L, Map<String, Object>>, A, String> newTransitionSystem() {
+        TransitionSystem<Pair<L, Map<String, Object>>, A, String> ts = new TransitionSystemImpl<>();
+        ts.setName(pg.getName() + "_as_transition_system");
+        return ts;
+    }
+
+    // a state an approximate store took for a seen one, though it was never added
+    private boolean isOmitted(StateStore visited, TransitionSystem<Pair<L, Map<String, Object>>, A, String> ts,
+                              Pair<L, Map<String, Object>> state) {
+        return !visited.isExact() && !ts.getStates().contains(state);
+    }
+
+    // adds the state, labeled by its location and by "var = value" for each variable
+    private void addState(TransitionSystem<Pair<L, Map<String, Object>>, A, String> ts, Pair<L, Map<String, Object>> state) {
+        ts.addState(state);
+        ts.addAtomicProposition(state.first.toString());
+        ts.addToLabel(state, state.first.toString());
+        for (String key : state.second.keySet()) {
+            ts.addAtomicProposition(key + " = " + state.second.get(key));
+            ts.addToLabel(state, key + " = " + state.second.get(key));
+        }
+    }
+}
@@ -4,10 +4,7 @@ import il.ac.bgu.cs.fvm.programgraph.PGTransition;
 import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
 import il.ac.bgu.cs.fvm.util.Pair;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 public class ProgramGraphImpl<L, A> implements ProgramGraph<L, A> {
     private String name;
@@ -16,12 +13,17 @@ public class ProgramGraphImpl<L, A> implements ProgramGraph<L, A> {
     private Set<PGTransition<L, A>> transitions;
     private Set<List<String>> initializations;
 
+    // edge indexes, kept in sync with 'transitions'
+    private Map<L, Set<PGTransition<L, A>>> outgoing;
+    private Map<L, Set<PGTransition<L, A>>> incoming;
 
     public ProgramGraphImpl() {
         locations = new HashSet<>();
         initials = new HashSet<>();
         transitions = new HashSet<>();
         initializations = new HashSet<>();
+        outgoing = new HashMap<>();
+        incoming = new HashMap<>();
     }
 
     @Override
@@ -60,7 +62,10 @@ public class ProgramGraphImpl<L, A> implements ProgramGraph<L, A> {
 
     @Override
     public void addTransition(PGTransition<L, A> t) {
-        transitions.add(t);
+        if (transitions.add(t)) {
+            outgoing.computeIfAbsent(t.getFrom(), k -> new HashSet<>()).add(t);
+            incoming.computeIfAbsent(t.getTo(), k -> new HashSet<>()).add(t);
+        }
     }
 
     @Override
@@ -85,7 +90,8 @@ public class ProgramGraphImpl<L, A> implements ProgramGraph<L, A> {
 
     @Override
     public Set<PGTransition<L, A>> getTransitions() {
-        return transitions;
+        // read only, so the edge indexes can't be bypassed
+        return Collections.unmodifiableSet(transitions);
     }
 
     @Override
@@ -95,7 +101,41 @@ public class ProgramGraphImpl<L, A> implements ProgramGraph<L, A> {
 
     @Override
     public void removeTransition(PGTransition<L, A> t) {
-        transitions.remove(t);
+        if (transitions.remove(t)) {
+            outgoing.get(t.getFrom()).remove(t);
+            incoming.get(t.getTo()).remove(t);
+        }
+    }
+
+    /**
+     * Removes every location not in {@code keep}, with the edges touching it, in one pass.
+     */
+    void retainLocations(Set<? extends L> keep) {
+        Set<PGTransition<L, A>> all = transitions;
+        locations.retainAll(keep);
+        initials.retainAll(keep);
+        transitions = new HashSet<>();
+        outgoing = new HashMap<>();
+        incoming = new HashMap<>();
+        for (PGTransition<L, A> t : all)
+            if (locations.contains(t.getFrom()) && locations.contains(t.getTo()))
+                addTransition(t);
+    }
+
+    /**
+     * @return the edges leaving {@code l} (empty if there are none).
+     */
+    Set<PGTransition<L, A>> outgoing(L l) {
+        Set<PGTransition<L, A>> out = outgoing.get(l);
+        return out == null ? Collections.emptySet() : Collections.unmodifiableSet(out);
+    }
+
+    /**
+     * @return the edges entering {@code l} (empty if there are none).
+     */
+    Set<PGTransition<L, A>> incoming(L l) {
+        Set<PGTransition<L, A>> in = incoming.get(l);
+        return in == null ? Collections.emptySet() : Collections.unmodifiableSet(in);
     }
 
     @Override
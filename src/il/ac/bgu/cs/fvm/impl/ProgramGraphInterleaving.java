@@ -0,0 +1,120 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.programgraph.PGTransition;
+import il.ac.bgu.cs.fvm.programgraph.ProgramGraph;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * The interleaving {@code PG1 ||| ... ||| PGn} of any number of program graphs. Every edge of the result
+ * is made directly from a component edge and the locations of the other components, through the
+ * components' per-location edge index; nothing is searched for.
+ * <p>
+ * Either all the tuples {@code L1 x ... x Ln} are built, as the textbook definition has it, or only the
+ * tuples reachable from the initial ones along the edges (ignoring conditions, which depend on the
+ * variables). The initializations are every combination of one initialization list per component.
+ * <p>
+ * Tuples are represented as in {@link Interleaving}.
+ */
+class ProgramGraphInterleaving<A> {
+
+    private final List<ProgramGraph<Object, A>> components;
+    private final List<ProgramGraphAdjacency<Object, A>> edges;
+
+    @SuppressWarnings("unchecked")
+    ProgramGraphInterleaving(List<? extends ProgramGraph<?, A>> components) {
+        this.components = new ArrayList<>();
+        this.edges = new ArrayList<>();
+        for (ProgramGraph<?, A> pg : components) {
+            this.components.add((ProgramGraph<Object, A>) pg);
+            this.edges.add(new ProgramGraphAdjacency<>((ProgramGraph<Object, A>) pg));
+        }
+    }
+
+    /**
+     * @param asLocation    how a tuple of component locations appears in the result; called once per tuple.
+     * @param reachableOnly whether to keep only the locations reachable from the initial ones.
+     */
+    <T> ProgramGraph<T, A> build(String name, Function<List<Object>, T> asLocation, boolean reachableOnly) {
+        ProgramGraph<T, A> pg = new ProgramGraphImpl<>();
+        pg.setName(name);
+
+        for (List<String> initialization : initializations())
+            pg.addInitalization(initialization);
+
+        Map<List<Object>, T> visited = new HashMap<>();
+        Deque<List<Object>> to_work_on = new ArrayDeque<>();
+        for (List<Object> initial : product(ProgramGraph::getInitialLocations)) {
+            T location = visited.get(initial);
+            if (location == null)
+                location = discover(pg, initial, asLocation, visited, to_work_on);
+            pg.setInitial(location, true);
+        }
+        if (!reachableOnly)
+            for (List<Object> tuple : product(ProgramGraph::getLocations))
+                if (!visited.containsKey(tuple))
+                    discover(pg, tuple, asLocation, visited, to_work_on);
+
+        while (!to_work_on.isEmpty()) {
+            List<Object> from = to_work_on.pop();
+            T fromLocation = visited.get(from);
+            for (int i = 0; i < components.size(); i++) {
+                for (PGTransition<Object, A> t : edges.get(i).outgoing(from.get(i))) {
+                    List<Object> to = new ArrayList<>(from);
+                    to.set(i, t.getTo());
+                    T toLocation = visited.get(to);
+                    if (toLocation == null)
+                        toLocation = discover(pg, to, asLocation, visited, to_work_on);
+                    pg.addTransition(new PGTransition<>(fromLocation, t.getCondition(), t.getAction(), toLocation));
+                }
+            }
+        }
+        return pg;
+    }
+
+    private <T> T discover(ProgramGraph<T, A> pg, List<Object> tuple, Function<List<Object>, T> asLocation,
+                           Map<List<Object>, T> visited, Deque<List<Object>> to_work_on) {
+        T location = asLocation.apply(tuple);
+        visited.put(tuple, location);
+        pg.addLocation(location);
+        to_work_on.push(tuple);
+        return location;
+    }
+
+    // one initialization list of each component, concatenated in order
+    private Set<List<String>> initializations() {
+        Set<List<String>> combined = new LinkedHashSet<>();
+        combined.add(new ArrayList<>());
+        for (ProgramGraph<Object, A> component : components) {
+            Set<List<String>> extended = new LinkedHashSet<>();
+            for (List<String> prefix : combined) {
+                for (List<String> initialization : component.getInitalizations()) {
+                    List<String> longer = new ArrayList<>(prefix);
+                    longer.addAll(initialization);
+                    extended.add(longer);
+                }
+            }
+            combined = extended;
+        }
+        return combined;
+    }
+
+    // the cartesian product of one set of locations per component
+    private List<List<Object>> product(Function<ProgramGraph<Object, A>, Set<Object>> locations) {
+        List<List<Object>> tuples = new ArrayList<>();
+        tuples.add(new ArrayList<>());
+        for (ProgramGraph<Object, A> component : components) {
+            List<List<Object>> extended = new ArrayList<>();
+            for (List<Object> tuple : tuples) {
+                for (Object l : locations.apply(component)) {
+                    List<Object> longer = new ArrayList<>(tuple);
+                    longer.add(l);
+                    extended.add(longer);
+                }
+            }
+            tuples = extended;
+        }
+        return tuples;
+    }
+}
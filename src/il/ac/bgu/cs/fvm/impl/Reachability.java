@@ -0,0 +1,143 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.*;
+
+/**
+ * Images, pre-images and reachability over sets of states of any {@link TransitionSystem}, a frontier at
+ * a time: each search keeps the states seen so far and the last layer it added, and only the last layer
+ * is expanded. Our own implementations are already indexed both ways; for any other implementation the
+ * successor and predecessor indexes are built once, on first use.
+ */
+class Reachability<S> {
+
+    private final TransitionSystem<S, ?, ?> ts;
+    private Map<S, List<S>> successors;
+    private Map<S, List<S>> predecessors;
+
+    Reachability(TransitionSystem<S, ?, ?> ts) {
+        this.ts = ts;
+    }
+
+    /**
+     * @return the states reachable from {@code c} by a single step.
+     */
+    Set<S> image(Collection<? extends S> c) {
+        Set<S> image = new HashSet<>();
+        for (S s : c)
+            image.addAll(next(s, true));
+        return image;
+    }
+
+    /**
+     * @return the states that reach {@code c} by a single step.
+     */
+    Set<S> preImage(Collection<? extends S> c) {
+        Set<S> preImage = new HashSet<>();
+        for (S s : c)
+            preImage.addAll(next(s, false));
+        return preImage;
+    }
+
+    /**
+     * @return the states reachable from {@code from}, including them.
+     */
+    Set<S> forward(Collection<? extends S> from) {
+        return closure(from, true);
+    }
+
+    /**
+     * @return the states from which {@code to} is reachable, including them.
+     */
+    Set<S> backward(Collection<? extends S> to) {
+        return closure(to, false);
+    }
+
+    /**
+     * Searches forward from {@code from} and backward from {@code to} at once, always expanding the
+     * smaller frontier, and stops as soon as the searches meet, or one of them runs out of states.
+     *
+     * @return whether some state of {@code to} is reachable from some state of {@code from}.
+     */
+    boolean canReach(Collection<? extends S> from, Collection<? extends S> to) {
+        Set<S> forwardSeen = new HashSet<>(from);
+        Set<S> backwardSeen = new HashSet<>(to);
+        if (!Collections.disjoint(forwardSeen, backwardSeen))
+            return true;
+        List<S> forwardFrontier = new ArrayList<>(forwardSeen);
+        List<S> backwardFrontier = new ArrayList<>(backwardSeen);
+        while (!forwardFrontier.isEmpty() && !backwardFrontier.isEmpty()) {
+            boolean forward = forwardFrontier.size() <= backwardFrontier.size();
+            List<S> frontier = forward ? forwardFrontier : backwardFrontier;
+            Set<S> seen = forward ? forwardSeen : backwardSeen;
+            Set<S> other = forward ? backwardSeen : forwardSeen;
+            List<S> layer = new ArrayList<>();
+            for (S s : frontier) {
+                for (S t : next(s, forward)) {
+                    if (other.contains(t))
+                        return true;
+                    if (seen.add(t))
+                        layer.add(t);
+                }
+            }
+            if (forward)
+                forwardFrontier = layer;
+            else
+                backwardFrontier = layer;
+        }
+        return false;
+    }
+
+    private Set<S> closure(Collection<? extends S> start, boolean forward) {
+        Set<S> seen = new HashSet<>(start);
+        List<S> frontier = new ArrayList<>(seen);
+        while (!frontier.isEmpty()) {
+            List<S> layer = new ArrayList<>();
+            for (S s : frontier)
+                for (S t : next(s, forward))
+                    if (seen.add(t))
+                        layer.add(t);
+            frontier = layer;
+        }
+        return seen;
+    }
+
+    // the successors of s, or its predecessors
+    private Collection<S> next(S s, boolean forward) {
+        if (ts instanceof TransitionSystemImpl) {
+            TransitionSystemImpl<S, ?, ?> impl = (TransitionSystemImpl<S, ?, ?>) ts;
+            List<S> next = new ArrayList<>();
+            for (Transition<S, ?> t : forward ? impl.outgoing(s) : impl.incoming(s))
+                next.add(forward ? t.getTo() : t.getFrom());
+            return next;
+        }
+
+        if (ts instanceof CompactTransitionSystem) {
+            CompactTransitionSystem<S, ?, ?> cts = (CompactTransitionSystem<S, ?, ?>) ts;
+            int id = cts.stateId(s);
+            if (id < 0)
+                return Collections.emptyList();
+            List<S> next = new ArrayList<>();
+            if (forward)
+                for (int e = cts.firstOut(id); e < cts.endOut(id); e++)
+                    next.add(cts.state(cts.target(e)));
+            else
+                for (int e = cts.firstIn(id); e < cts.endIn(id); e++)
+                    next.add(cts.state(cts.source(e)));
+            return next;
+        }
+
+        if (successors == null) {
+            successors = new HashMap<>();
+            predecessors = new HashMap<>();
+            for (Transition<S, ?> t : ts.getTransitions()) {
+                successors.computeIfAbsent(t.getFrom(), k -> new ArrayList<>()).add(t.getTo());
+                predecessors.computeIfAbsent(t.getTo(), k -> new ArrayList<>()).add(t.getFrom());
+            }
+        }
+        List<S> next = (forward ? successors : predecessors).get(s);
+        return next == null ? Collections.emptyList() : next;
+    }
+}
@@ -0,0 +1,40 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.io.Closeable;
+
+/**
+ * The set of states an exploration has already visited. Explorations only ever add states and ask
+ * whether a state was seen, so a store may keep them in any form: as objects on the heap
+ * ({@link HeapStateStore}), as bytes in memory mapped files ({@link MappedStateStore}), or only as a few
+ * bits of their hashes ({@link BitStateStore}), at the price of missing some states.
+ * <p>
+ * A store is used by one thread at a time, and closed when its exploration is done.
+ */
+public interface StateStore extends Closeable {
+
+    /**
+     * @return {@code true} if {@code state} was not in the store before.
+     */
+    boolean add(Object state);
+
+    boolean contains(Object state);
+
+    /**
+     * @return the number of distinct states added.
+     */
+    long size();
+
+    /**
+     * @return {@code false} if {@link #add} may report a state as already seen when it is not, as a
+     * store keeping only hashes does. Explorations then skip the edges into such states.
+     */
+    default boolean isExact() {
+        return true;
+    }
+
+    /**
+     * Releases whatever the store holds. The store can't be used afterwards.
+     */
+    @Override
+    void close();
+}
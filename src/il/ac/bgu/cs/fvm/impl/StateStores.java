@@ -0,0 +1,56 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Visited sets for the explorations that build a transition system as they go.
+ */
+final class StateStores {
+
+    private StateStores() {
+    }
+
+    /**
+     * An exact store would only hold the states the system being built already holds, so stores are
+     * taken from {@code stateStores} only if they are approximate; otherwise the states of the system
+     * serve as the visited set, and no store is built at all.
+     *
+     * @return for the transition system an exploration builds, the store to explore with. The exploration
+     * must add every state the store reports as new to the system, before it asks about another.
+     */
+    static Function<TransitionSystem<?, ?, ?>, StateStore> forExplorations(Supplier<? extends StateStore> stateStores,
+                                                                         boolean exact) {
+        return exact ? StatesOf::new : ts -> stateStores.get();
+    }
+
+    // the states of the transition system being built; they are added to it by the exploration
+    private static final class StatesOf implements StateStore {
+        private final TransitionSystem<?, ?, ?> ts;
+
+        StatesOf(TransitionSystem<?, ?, ?> ts) {
+            this.ts = ts;
+        }
+
+        @Override
+        public boolean add(Object state) {
+            return !contains(state);
+        }
+
+        @Override
+        public boolean contains(Object state) {
+            return ts.getStates().contains(state);
+        }
+
+        @Override
+        public long size() {
+            return ts.getStates().size();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
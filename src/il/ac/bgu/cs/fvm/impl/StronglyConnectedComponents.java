@@ -0,0 +1,283 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.exceptions.StateNotFoundException;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * The strongly connected components of a {@link TransitionSystem}, found by Tarjan's algorithm in time
+ * linear in its states and transitions. The depth first search runs on an explicit stack over integer
+ * ids, so deep systems don't overflow the call stack.
+ * <p>
+ * Components are numbered {@code 0..count()-1} in the order Tarjan's algorithm completes them, which is
+ * a reverse topological order of the condensation: every transition between two components goes from a
+ * higher number to a lower one, and component 0 is a bottom component.
+ * <p>
+ * A component is nontrivial if it has a cycle: more than one state, or a state with a self loop. An
+ * infinite path eventually stays in one nontrivial component, so a Buchi condition (e.g. on a
+ * {@code product} of a system and an automaton) holds on some path iff a reachable nontrivial component
+ * meets the accepting states, and a generalized one iff such a component meets every acceptance set.
+ */
+public class StronglyConnectedComponents<S> {
+
+    private final List<S> states = new ArrayList<>();
+    private final Map<S, Integer> ids = new HashMap<>();
+    private final int[] initials;
+    private final int[] component;
+    private final List<List<S>> components = new ArrayList<>();
+    private final List<Set<Integer>> successors = new ArrayList<>();
+    private final BitSet nontrivial = new BitSet();
+
+    StronglyConnectedComponents(TransitionSystem<S, ?, ?> ts) {
+        for (S s : ts.getStates()) {
+            ids.put(s, states.size());
+            states.add(s);
+        }
+        int n = states.size();
+
+        // transitions as arrays: the targets of state v are targets[first[v]..first[v + 1])
+        Adjacency<S, ?> adjacency = new Adjacency<>(ts);
+        int[] first = new int[n + 1];
+        int[] targets = new int[Math.max(16, n)];
+        int m = 0;
+        for (int v = 0; v < n; v++) {
+            first[v] = m;
+            for (Transition<S, ?> t : adjacency.outgoing(states.get(v))) {
+                if (m == targets.length)
+                    targets = Arrays.copyOf(targets, targets.length * 2);
+                targets[m++] = ids.get(t.getTo());
+            }
+        }
+        first[n] = m;
+
+        initials = new int[ts.getInitialStates().size()];
+        int k = 0;
+        for (S s : ts.getInitialStates())
+            initials[k++] = ids.get(s);
+
+        component = new int[n];
+        tarjan(first, targets);
+
+        for (int c = 0; c < components.size(); c++)
+            successors.add(new HashSet<>());
+        for (int v = 0; v < n; v++) {
+            for (int e = first[v]; e < first[v + 1]; e++) {
+                int w = targets[e];
+                if (component[v] != component[w])
+                    successors.get(component[v]).add(component[w]);
+                else if (v == w)
+                    nontrivial.set(component[v]);
+            }
+        }
+        for (int c = 0; c < components.size(); c++)
+            if (components.get(c).size() > 1)
+                nontrivial.set(c);
+    }
+
+    private void tarjan(int[] first, int[] targets) {
+        int n = states.size();
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] next = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int[] calls = new int[n];
+        int stackSize = 0;
+        int counter = 0;
+        Arrays.fill(index, -1);
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0)
+                continue;
+            int depth = 0;
+            calls[depth++] = root;
+            index[root] = low[root] = counter++;
+            next[root] = first[root];
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth > 0) {
+                int v = calls[depth - 1];
+                if (next[v] < first[v + 1]) {
+                    int w = targets[next[v]++];
+                    if (index[w] < 0) {
+                        index[w] = low[w] = counter++;
+                        next[w] = first[w];
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        calls[depth++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+
+                depth--;
+                if (low[v] == index[v]) {
+                    List<S> members = new ArrayList<>();
+                    int w;
+                    do {
+                        w = stack[--stackSize];
+                        onStack[w] = false;
+                        component[w] = components.size();
+                        members.add(states.get(w));
+                    } while (w != v);
+                    components.add(Collections.unmodifiableList(members));
+                }
+                if (depth > 0) {
+                    int parent = calls[depth - 1];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of components.
+     */
+    public int count() {
+        return components.size();
+    }
+
+    /**
+     * @return the number of the component of {@code s}.
+     */
+    public int componentOf(S s) {
+        Integer id = ids.get(s);
+        if (id == null)
+            throw new StateNotFoundException(s);
+        return component[id];
+    }
+
+    /**
+     * @return the states of component {@code c}.
+     */
+    public List<S> getComponent(int c) {
+        return components.get(c);
+    }
+
+    /**
+     * @return all the components, by number.
+     */
+    public List<List<S>> getComponents() {
+        return Collections.unmodifiableList(components);
+    }
+
+    /**
+     * @return whether component {@code c} has a cycle.
+     */
+    public boolean isNontrivial(int c) {
+        return nontrivial.get(c);
+    }
+
+    /**
+     * @return the components entered by a transition leaving component {@code c}: its successors in the
+     * condensation, all numbered lower than {@code c}.
+     */
+    public Set<Integer> getSuccessorComponents(int c) {
+        return Collections.unmodifiableSet(successors.get(c));
+    }
+
+    /**
+     * @return whether no transition leaves component {@code c}.
+     */
+    public boolean isBottom(int c) {
+        return successors.get(c).isEmpty();
+    }
+
+    /**
+     * @return the components reachable from an initial state.
+     */
+    public BitSet getReachableComponents() {
+        BitSet reachable = new BitSet();
+        for (int v : initials)
+            reachable.set(component[v]);
+        // successors are numbered lower, so one descending sweep closes the set
+        for (int c = components.size() - 1; c >= 0; c--)
+            if (reachable.get(c))
+                for (int d : successors.get(c))
+                    reachable.set(d);
+        return reachable;
+    }
+
+    /**
+     * @return the reachable nontrivial components that contain a state of every one of
+     * {@code acceptanceSets}: the ones some path of the system can stay in forever, visiting each set
+     * infinitely often.
+     */
+    public List<Integer> getAcceptingComponents(Collection<? extends Predicate<? super S>> acceptanceSets) {
+        List<Integer> accepting = new ArrayList<>();
+        BitSet reachable = getReachableComponents();
+        for (int c = reachable.nextSetBit(0); c >= 0; c = reachable.nextSetBit(c + 1)) {
+            if (!nontrivial.get(c))
+                continue;
+            boolean meetsAll = true;
+            for (Predicate<? super S> acceptanceSet : acceptanceSets) {
+                boolean meets = false;
+                for (S s : components.get(c))
+                    if (acceptanceSet.test(s)) {
+                        meets = true;
+                        break;
+                    }
+                meetsAll &= meets;
+            }
+            if (meetsAll)
+                accepting.add(c);
+        }
+        return accepting;
+    }
+
+    /**
+     * Same as {@link #getAcceptingComponents(Collection)} with a single acceptance set.
+     */
+    public List<Integer> getAcceptingComponents(Predicate<? super S> accepting) {
+        return getAcceptingComponents(Collections.singletonList(accepting));
+    }
+
+    /**
+     * @return whether some path from an initial state visits {@code accepting} states infinitely often.
+     */
+    public boolean hasAcceptingCycle(Predicate<? super S> accepting) {
+        return !getAcceptingComponents(accepting).isEmpty();
+    }
+
+    /**
+     * @return the number of nontrivial components.
+     */
+    public int getNontrivialCount() {
+        return nontrivial.cardinality();
+    }
+
+    /**
+     * @return the number of states of the largest component, 0 if there are no states.
+     */
+    public int getLargestSize() {
+        int largest = 0;
+        for (List<S> c : components)
+            largest = Math.max(largest, c.size());
+        return largest;
+    }
+
+    /**
+     * @return how many components there are of each size.
+     */
+    public SortedMap<Integer, Integer> getSizeHistogram() {
+        SortedMap<Integer, Integer> histogram = new TreeMap<>();
+        for (List<S> c : components)
+            histogram.merge(c.size(), 1, Integer::sum);
+        return histogram;
+    }
+
+    @Override
+    public String toString() {
+        int bottom = 0;
+        for (int c = 0; c < components.size(); c++)
+            if (isBottom(c))
+                bottom++;
+        return String.format("%d states in %d components (%d nontrivial, %d bottom, largest %d)",
+                states.size(), count(), getNontrivialCount(), bottom, getLargestSize());
+    }
+}
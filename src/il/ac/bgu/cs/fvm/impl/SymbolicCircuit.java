@@ -0,0 +1,190 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.circuits.Circuit;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Reachability of a {@link Circuit}, with the sets of register valuations kept as BDDs (one variable
+ * per register).
+ * <p>
+ * The circuit is a black box that can only be evaluated, so the image of a set is computed by evaluating
+ * the register update function on the frontier only: the registers reached for the first time in the
+ * previous step, under every input. Nothing is enumerated over the registers that are never reached, and
+ * the reached set is kept as a BDD rather than as a set of maps, so circuits with many registers and a
+ * small (or regular) reachable part are cheap.
+ * <p>
+ * Since the inputs are free, the reachable states of the circuit's transition system are all the input
+ * valuations paired with the reachable register valuations; {@link #toTransitionSystem()} builds exactly
+ * those, on request.
+ */
+public class SymbolicCircuit {
+
+    private final Circuit c;
+    private final List<String> registers;
+    private final List<String> inputs;
+    private final List<Map<String, Boolean>> inputValuations;
+    private final Bdd bdd;
+
+    private int reachable = -1;
+    private int iterations;
+
+    SymbolicCircuit(Circuit c) {
+        this.c = c;
+        this.registers = new ArrayList<>(c.getRegisterNames());
+        this.inputs = new ArrayList<>(c.getInputPortNames());
+        this.bdd = new Bdd(registers.size());
+
+        inputValuations = new ArrayList<>();
+        forEachValuation(inputs, inputValuations::add);
+    }
+
+    /**
+     * @return the BDD handle of the reachable register valuations, computing it on the first call.
+     */
+    private int reachable() {
+        if (reachable != -1)
+            return reachable;
+
+        // the initial registers are all zero
+        int reached = bdd.cube(new boolean[registers.size()]);
+        int frontier = reached;
+        iterations = 0;
+        while (frontier != Bdd.FALSE) {
+            int[] image = {Bdd.FALSE};
+            bdd.forEachMinterm(frontier, bits -> {
+                Map<String, Boolean> current = toValuation(bits);
+                for (Map<String, Boolean> in : inputValuations)
+                    image[0] = bdd.or(image[0], bdd.cube(toBits(c.updateRegisters(in, current))));
+            });
+            frontier = bdd.diff(image[0], reached);
+            reached = bdd.or(reached, frontier);
+            iterations++;
+        }
+        reachable = reached;
+        return reachable;
+    }
+
+    /**
+     * @return the number of reachable register valuations.
+     */
+    public double getReachableRegisterCount() {
+        return bdd.satCount(reachable());
+    }
+
+    /**
+     * @return the number of reachable states, that is input valuations times reachable register valuations.
+     */
+    public double getReachableStateCount() {
+        return getReachableRegisterCount() * inputValuations.size();
+    }
+
+    /**
+     * @return the number of image steps it took to reach the fixed point.
+     */
+    public int getIterations() {
+        reachable();
+        return iterations;
+    }
+
+    /**
+     * @return the number of BDD nodes made so far.
+     */
+    public int getBddNodeCount() {
+        return bdd.nodeCount();
+    }
+
+    /**
+     * @param registerValues a value for each register of the circuit.
+     * @return whether the registers can hold these values in some reachable state.
+     */
+    public boolean isReachable(Map<String, Boolean> registerValues) {
+        return bdd.contains(reachable(), toBits(registerValues));
+    }
+
+    /**
+     * @return the reachable register valuations, one map per valuation.
+     */
+    public Set<Map<String, Boolean>> getReachableRegisters() {
+        Set<Map<String, Boolean>> valuations = new LinkedHashSet<>();
+        bdd.forEachMinterm(reachable(), bits -> valuations.add(toValuation(bits)));
+        return valuations;
+    }
+
+    /**
+     * Builds the reachable part of the circuit's transition system: states are (inputs, registers) pairs,
+     * actions are input valuations, and a state is labeled by its true inputs, registers and outputs.
+     */
+    public TransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> toTransitionSystem() {
+        TransitionSystem<Pair<Map<String, Boolean>, Map<String, Boolean>>, Map<String, Boolean>, Object> ts = new TransitionSystemImpl<>();
+        ts.setName("circuit to transition system");
+
+        for (Map<String, Boolean> in : inputValuations)
+            ts.addAction(in);
+        for (String reg : c.getRegisterNames())
+            ts.addAtomicProposition(reg);
+        for (String in : c.getInputPortNames())
+            ts.addAtomicProposition(in);
+        for (String out : c.getOutputPortNames())
+            ts.addAtomicProposition(out);
+
+        List<Map<String, Boolean>> reachableRegisters = new ArrayList<>(getReachableRegisters());
+        for (Map<String, Boolean> reg : reachableRegisters) {
+            boolean initial = !reg.values().contains(Boolean.TRUE);
+            for (Map<String, Boolean> in : inputValuations) {
+                Pair<Map<String, Boolean>, Map<String, Boolean>> state = new Pair<>(in, reg);
+                ts.addState(state);
+                if (initial)
+                    ts.setInitial(state, true);
+                for (String name : inputs)
+                    if (in.get(name))
+                        ts.addToLabel(state, name);
+                for (String name : registers)
+                    if (reg.get(name))
+                        ts.addToLabel(state, name);
+                Map<String, Boolean> outputs = c.computeOutputs(in, reg);
+                for (String out : c.getOutputPortNames())
+                    if (outputs.get(out))
+                        ts.addToLabel(state, out);
+            }
+        }
+
+        for (Map<String, Boolean> reg : reachableRegisters) {
+            for (Map<String, Boolean> in : inputValuations) {
+                Map<String, Boolean> next = c.updateRegisters(in, reg);
+                for (Map<String, Boolean> action : inputValuations)
+                    ts.addTransition(new Transition<>(new Pair<>(in, reg), action, new Pair<>(action, next)));
+            }
+        }
+        return ts;
+    }
+
+    private Map<String, Boolean> toValuation(boolean[] bits) {
+        Map<String, Boolean> valuation = new HashMap<>();
+        for (int i = 0; i < bits.length; i++)
+            valuation.put(registers.get(i), bits[i]);
+        return valuation;
+    }
+
+    private boolean[] toBits(Map<String, Boolean> valuation) {
+        boolean[] bits = new boolean[registers.size()];
+        for (int i = 0; i < bits.length; i++)
+            bits[i] = Boolean.TRUE.equals(valuation.get(registers.get(i)));
+        return bits;
+    }
+
+    // every valuation of names, in binary counting order
+    private static void forEachValuation(List<String> names, Consumer<Map<String, Boolean>> visitor) {
+        long count = 1L << names.size();
+        for (long i = 0; i < count; i++) {
+            Map<String, Boolean> valuation = new HashMap<>();
+            for (int j = 0; j < names.size(); j++)
+                valuation.put(names.get(j), ((i >>> (names.size() - 1 - j)) & 1) == 1);
+            visitor.accept(valuation);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.AlternatingSequence;
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Replays alternating sequences of states and actions against one transition system. The system is
+ * prepared once: its successors are indexed by (state, action), so every step of a sequence is a single
+ * lookup, and whether the last state is terminal is another. Our own implementations are already
+ * indexed and are used as is. Any number of sequences may be checked, from several threads, as long as
+ * the system is not modified meanwhile.
+ */
+public class TraceChecker<S, A> {
+
+    /**
+     * Why a sequence is not an execution fragment.
+     */
+    public enum Failure {
+        /**
+         * The sequence is an execution fragment.
+         */
+        NONE,
+        /**
+         * A step names a state the system doesn't have.
+         */
+        UNKNOWN_STATE,
+        /**
+         * A step names an action the system doesn't have.
+         */
+        UNKNOWN_ACTION,
+        /**
+         * A step is not a transition of the system.
+         */
+        MISSING_TRANSITION
+    }
+
+    /**
+     * The outcome of replaying one sequence.
+     */
+    public static final class Result<S, A> {
+        private final Failure failure;
+        private final int failedStep;
+        private final Object unknown;
+        private final Transition<S, A> failedTransition;
+        private final boolean initial;
+        private final boolean terminal;
+
+        private Result(Failure failure, int failedStep, Object unknown, Transition<S, A> failedTransition,
+                       boolean initial, boolean terminal) {
+            this.failure = failure;
+            this.failedStep = failedStep;
+            this.unknown = unknown;
+            this.failedTransition = failedTransition;
+            this.initial = initial;
+            this.terminal = terminal;
+        }
+
+        public boolean isExecutionFragment() {
+            return failure == Failure.NONE;
+        }
+
+        public boolean isInitialExecutionFragment() {
+            return isExecutionFragment() && initial;
+        }
+
+        public boolean isMaximalExecutionFragment() {
+            return isExecutionFragment() && terminal;
+        }
+
+        public boolean isExecution() {
+            return isInitialExecutionFragment() && terminal;
+        }
+
+        public Failure getFailure() {
+            return failure;
+        }
+
+        /**
+         * @return the index of the first step that fails, step {@code i} going from the {@code i}th state
+         * of the sequence (from 0) to the next; -1 if there is none.
+         */
+        public int getFailedStep() {
+            return failedStep;
+        }
+
+        /**
+         * @return the first failing step as written in the sequence, or {@code null} if there is none, or
+         * the sequence is a single unknown state.
+         */
+        public Transition<S, A> getFailedTransition() {
+            return failedTransition;
+        }
+
+        /**
+         * @return the state or action of the first failing step that the system doesn't have, or
+         * {@code null} if there is none.
+         */
+        public Object getUnknown() {
+            return unknown;
+        }
+
+        @Override
+        public String toString() {
+            if (failure == Failure.NONE)
+                return "Execution fragment (" + (initial ? "initial" : "not initial") + ", " + (terminal ? "maximal" : "not maximal") + ")";
+            return failure + " at step " + failedStep + ": " + (unknown != null ? unknown : failedTransition);
+        }
+    }
+
+    private final TransitionSystem<S, A, ?> ts;
+    private final int parallelism;
+    private final Map<S, Map<A, Set<S>>> successors;
+
+    TraceChecker(TransitionSystem<S, A, ?> ts, int parallelism) {
+        this.ts = ts;
+        this.parallelism = parallelism;
+        if (ts instanceof TransitionSystemImpl || ts instanceof CompactTransitionSystem) {
+            successors = null;
+        } else {
+            successors = new HashMap<>();
+            for (Transition<S, A> t : ts.getTransitions())
+                successors.computeIfAbsent(t.getFrom(), k -> new HashMap<>()).computeIfAbsent(t.getAction(), k -> new HashSet<>()).add(t.getTo());
+        }
+    }
+
+    /**
+     * Replays {@code e} step by step, stopping at the first step that fails.
+     */
+    public Result<S, A> check(AlternatingSequence<S, A> e) {
+        S state = e.head();
+        if (!ts.getStates().contains(state))
+            return new Result<>(Failure.UNKNOWN_STATE, 0, state, null, false, false);
+        boolean initial = ts.getInitialStates().contains(state);
+
+        int step = 0;
+        AlternatingSequence<A, S> rest = e.tail();
+        while (!rest.isEmpty()) {
+            A action = rest.head();
+            AlternatingSequence<S, A> next = rest.tail();
+            S to = next.head();
+            if (!ts.getStates().contains(to))
+                return failed(Failure.UNKNOWN_STATE, step, to, state, action, to, initial);
+            if (!ts.getActions().contains(action))
+                return failed(Failure.UNKNOWN_ACTION, step, action, state, action, to, initial);
+            if (!hasTransition(state, action, to))
+                return failed(Failure.MISSING_TRANSITION, step, null, state, action, to, initial);
+            state = to;
+            rest = next.tail();
+            step++;
+        }
+        return new Result<>(Failure.NONE, -1, null, null, initial, isTerminal(state));
+    }
+
+    /**
+     * Replays every sequence of {@code traces}, on as many threads as this checker was given.
+     *
+     * @return the results, in the order of {@code traces}.
+     */
+    public List<Result<S, A>> checkAll(Collection<? extends AlternatingSequence<S, A>> traces) {
+        if (parallelism <= 1 || traces.size() < 2)
+            return traces.stream().map(this::check).collect(Collectors.toList());
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(() -> traces.parallelStream().map(this::check).collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Trace checking was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Replays the sequences of {@code traces} as they are consumed; parallel if {@code traces} is.
+     */
+    public Stream<Result<S, A>> checkAll(Stream<? extends AlternatingSequence<S, A>> traces) {
+        return traces.map(this::check);
+    }
+
+    private Result<S, A> failed(Failure failure, int step, Object unknown, S from, A action, S to, boolean initial) {
+        return new Result<>(failure, step, unknown, new Transition<>(from, action, to), initial, false);
+    }
+
+    private boolean hasTransition(S from, A action, S to) {
+        if (ts instanceof TransitionSystemImpl)
+            return ((TransitionSystemImpl<S, A, ?>) ts).post(from, action).contains(to);
+        if (ts instanceof CompactTransitionSystem) {
+            CompactTransitionSystem<S, A, ?> cts = (CompactTransitionSystem<S, A, ?>) ts;
+            int id = cts.stateId(from);
+            int actionId = cts.actionId(action);
+            int target = cts.stateId(to);
+            for (int e = cts.firstOut(id); e < cts.endOut(id); e++)
+                if (cts.outAction(e) == actionId && cts.target(e) == target)
+                    return true;
+            return false;
+        }
+        Map<A, Set<S>> byAction = successors.get(from);
+        return byAction != null && byAction.getOrDefault(action, Collections.emptySet()).contains(to);
+    }
+
+    private boolean isTerminal(S s) {
+        if (ts instanceof TransitionSystemImpl)
+            return ((TransitionSystemImpl<S, A, ?>) ts).outgoing(s).isEmpty();
+        if (ts instanceof CompactTransitionSystem) {
+            CompactTransitionSystem<S, A, ?> cts = (CompactTransitionSystem<S, A, ?>) ts;
+            int id = cts.stateId(s);
+            return cts.firstOut(id) == cts.endOut(id);
+        }
+        return !successors.containsKey(s);
+    }
+}
@@ -0,0 +1,372 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+import il.ac.bgu.cs.fvm.util.Pair;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A compact binary format for transition systems, so a state space can be explored once and reloaded
+ * later instead of explored again.
+ * <p>
+ * Layout: the magic {@code FVMTS} and a version byte, the name, the actions, the atomic propositions and
+ * the states (a count, then the values), the initial states as a bitset over the state ids, one label
+ * bitset (over the proposition ids) per state, the number of transitions, and then for every state its
+ * out degree followed by its edges, each a zigzag varint target delta and a varint action id. All the
+ * counts are varints.
+ * <p>
+ * Values may be strings, integers, longs, booleans, {@code Pair}s, lists, sets and maps of these, and
+ * {@code null}. A string is written in full the first time it appears and as an id into the table of
+ * strings seen so far after that, so the many repeated variable names and locations cost a few bytes each.
+ * <p>
+ * Writing streams state by state. Reading maps the file in windows, so files larger than 2GB work, and
+ * produces a {@link CompactTransitionSystem} directly.
+ */
+class TransitionSystemCodec {
+
+    private static final byte[] MAGIC = {'F', 'V', 'M', 'T', 'S'};
+    private static final int VERSION = 1;
+
+    static final int NULL = 0;
+    static final int STRING = 1;
+    static final int STRING_REF = 2;
+    static final int INTEGER = 3;
+    static final int LONG = 4;
+    static final int FALSE = 5;
+    static final int TRUE = 6;
+    static final int PAIR = 7;
+    static final int LIST = 8;
+    static final int SET = 9;
+    static final int MAP = 10;
+
+    private static final long WINDOW = 1L << 26;
+
+    private TransitionSystemCodec() {
+    }
+
+    static void write(TransitionSystem<?, ?, ?> ts, Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            write(ts, out);
+        }
+    }
+
+    /**
+     * Writes {@code ts} to {@code out}, which is flushed but not closed.
+     */
+    static <S, A, P> void write(TransitionSystem<S, A, P> ts, OutputStream out) throws IOException {
+        Encoder encoder = new Encoder(out);
+        encoder.out.write(MAGIC);
+        encoder.out.write(VERSION);
+        encoder.value(ts.getName());
+
+        Map<A, Integer> actionIds = encoder.values(ts.getActions());
+        Map<P, Integer> apIds = encoder.values(ts.getAtomicPropositions());
+        Map<S, Integer> stateIds = encoder.values(ts.getStates());
+
+        BitSet initials = new BitSet();
+        for (S s : ts.getInitialStates())
+            initials.set(stateIds.get(s));
+        encoder.bits(initials);
+
+        List<S> states = new ArrayList<>(stateIds.size());
+        states.addAll(Collections.nCopies(stateIds.size(), null));
+        for (Map.Entry<S, Integer> entry : stateIds.entrySet())
+            states.set(entry.getValue(), entry.getKey());
+
+        for (S s : states) {
+            BitSet label = new BitSet();
+            for (P p : ts.getLabel(s))
+                label.set(apIds.get(p));
+            encoder.bits(label);
+        }
+
+        Adjacency<S, A> adjacency = new Adjacency<>(ts);
+        encoder.varint(ts.getTransitions().size());
+        for (int from = 0; from < states.size(); from++) {
+            Collection<Transition<S, A>> out_transitions = adjacency.outgoing(states.get(from));
+            encoder.varint(out_transitions.size());
+            for (Transition<S, A> t : out_transitions) {
+                encoder.varint(zigzag(stateIds.get(t.getTo()) - from));
+                encoder.varint(actionIds.get(t.getAction()));
+            }
+        }
+        encoder.out.flush();
+    }
+
+    /**
+     * @throws IOException if the file can't be read or is not in this format.
+     */
+    @SuppressWarnings("unchecked")
+    static <S, A, P> CompactTransitionSystem<S, A, P> read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Decoder in = new Decoder(channel);
+            for (byte b : MAGIC)
+                if (in.readByte() != b)
+                    throw new IOException("Not a transition system file: " + file);
+            int version = in.readByte();
+            if (version != VERSION)
+                throw new IOException("Unsupported transition system file version " + version + ": " + file);
+
+            String name = (String) in.value();
+            List<A> actions = (List<A>) in.values();
+            List<P> aps = (List<P>) in.values();
+            List<S> states = (List<S>) in.values();
+            int n = states.size();
+
+            BitSet initials = in.bits();
+            BitSet[] labels = new BitSet[n];
+            for (int s = 0; s < n; s++)
+                labels[s] = in.bits();
+
+            int m = in.varint();
+            int[] outStart = new int[n + 1];
+            int[] outTarget = new int[m];
+            int[] outAction = new int[m];
+            int e = 0;
+            for (int from = 0; from < n; from++) {
+                int degree = in.varint();
+                if (e + degree > m)
+                    throw new IOException("Corrupt transition system file, more transitions than declared: " + file);
+                for (int i = 0; i < degree; i++, e++) {
+                    outTarget[e] = from + unzigzag(in.varint());
+                    outAction[e] = in.varint();
+                }
+                outStart[from + 1] = e;
+            }
+            if (e != m)
+                throw new IOException("Corrupt transition system file, fewer transitions than declared: " + file);
+
+            return new CompactTransitionSystem<>(name, states, actions, aps, initials, labels, outStart, outTarget, outAction);
+        }
+    }
+
+    private static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    private static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static class Encoder {
+        private final OutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        Encoder(OutputStream out) {
+            this.out = new BufferedOutputStream(out, 1 << 16);
+        }
+
+        // writes the values and returns their ids, in writing order
+        <T> Map<T, Integer> values(Collection<T> values) throws IOException {
+            Map<T, Integer> ids = new HashMap<>(values.size() * 2);
+            varint(values.size());
+            for (T v : values) {
+                ids.put(v, ids.size());
+                value(v);
+            }
+            return ids;
+        }
+
+        void value(Object v) throws IOException {
+            if (v == null) {
+                out.write(NULL);
+            } else if (v instanceof String) {
+                Integer id = strings.get(v);
+                if (id != null) {
+                    out.write(STRING_REF);
+                    varint(id);
+                } else {
+                    strings.put((String) v, strings.size());
+                    byte[] bytes = ((String) v).getBytes(StandardCharsets.UTF_8);
+                    out.write(STRING);
+                    varint(bytes.length);
+                    out.write(bytes);
+                }
+            } else if (v instanceof Integer) {
+                out.write(INTEGER);
+                varint(zigzag((Integer) v));
+            } else if (v instanceof Long) {
+                out.write(LONG);
+                long l = (Long) v;
+                varlong((l << 1) ^ (l >> 63));
+            } else if (v instanceof Boolean) {
+                out.write((Boolean) v ? TRUE : FALSE);
+            } else if (v instanceof Pair) {
+                out.write(PAIR);
+                value(((Pair<?, ?>) v).first);
+                value(((Pair<?, ?>) v).second);
+            } else if (v instanceof List) {
+                out.write(LIST);
+                elements((List<?>) v);
+            } else if (v instanceof Set) {
+                out.write(SET);
+                elements((Set<?>) v);
+            } else if (v instanceof Map) {
+                out.write(MAP);
+                varint(((Map<?, ?>) v).size());
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) v).entrySet()) {
+                    value(entry.getKey());
+                    value(entry.getValue());
+                }
+            } else {
+                throw new IllegalArgumentException("Can't write a value of " + v.getClass() + ": " + v);
+            }
+        }
+
+        private void elements(Collection<?> values) throws IOException {
+            varint(values.size());
+            for (Object element : values)
+                value(element);
+        }
+
+        void bits(BitSet bits) throws IOException {
+            long[] words = bits.toLongArray();
+            varint(words.length);
+            for (long word : words)
+                varlong(word);
+        }
+
+        void varint(int v) throws IOException {
+            while ((v & ~0x7F) != 0) {
+                out.write((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            out.write(v);
+        }
+
+        void varlong(long v) throws IOException {
+            while ((v & ~0x7FL) != 0) {
+                out.write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            out.write((int) v);
+        }
+    }
+
+    private static class Decoder {
+        private final FileChannel channel;
+        private final long size;
+        private long base;
+        private MappedByteBuffer buffer;
+        private final List<String> strings = new ArrayList<>();
+
+        Decoder(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            map(0);
+        }
+
+        // maps the next window of the file, starting at 'position'
+        private void map(long position) throws IOException {
+            base = position;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, size - position));
+        }
+
+        int readByte() throws IOException {
+            if (!buffer.hasRemaining()) {
+                long next = base + buffer.limit();
+                if (next >= size)
+                    throw new EOFException("Transition system file ends unexpectedly");
+                map(next);
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        List<Object> values() throws IOException {
+            int count = varint();
+            List<Object> values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                values.add(value());
+            return values;
+        }
+
+        Object value() throws IOException {
+            int tag = readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case STRING: {
+                    byte[] bytes = new byte[varint()];
+                    for (int i = 0; i < bytes.length; i++)
+                        bytes[i] = (byte) readByte();
+                    String s = new String(bytes, StandardCharsets.UTF_8);
+                    strings.add(s);
+                    return s;
+                }
+                case STRING_REF: {
+                    int id = varint();
+                    if (id >= strings.size())
+                        throw new IOException("Corrupt transition system file, unknown string " + id);
+                    return strings.get(id);
+                }
+                case INTEGER:
+                    return unzigzag(varint());
+                case LONG: {
+                    long l = varlong();
+                    return (l >>> 1) ^ -(l & 1);
+                }
+                case FALSE:
+                    return Boolean.FALSE;
+                case TRUE:
+                    return Boolean.TRUE;
+                case PAIR:
+                    return new Pair<>(value(), value());
+                case LIST:
+                    return values();
+                case SET: {
+                    int count = varint();
+                    Set<Object> set = new HashSet<>(count * 2);
+                    for (int i = 0; i < count; i++)
+                        set.add(value());
+                    return set;
+                }
+                case MAP: {
+                    int count = varint();
+                    Map<Object, Object> map = new HashMap<>(count * 2);
+                    for (int i = 0; i < count; i++)
+                        map.put(value(), value());
+                    return map;
+                }
+                default:
+                    throw new IOException("Corrupt transition system file, unknown value tag " + tag);
+            }
+        }
+
+        BitSet bits() throws IOException {
+            long[] words = new long[varint()];
+            for (int i = 0; i < words.length; i++)
+                words[i] = varlong();
+            return BitSet.valueOf(words);
+        }
+
+        int varint() throws IOException {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                v |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return v;
+            }
+            throw new IOException("Corrupt transition system file, varint too long");
+        }
+
+        long varlong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = readByte();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return v;
+            }
+            throw new IOException("Corrupt transition system file, varint too long");
+        }
+    }
+}
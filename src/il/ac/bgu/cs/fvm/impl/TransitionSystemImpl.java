@@ -17,6 +17,12 @@ public class TransitionSystemImpl<STATE, ACTION, ATOMIC_PROPOSITION> implements
     private Set<ATOMIC_PROPOSITION> atomic_propositions;
     private Map<STATE, Set<ATOMIC_PROPOSITION>> labelsMap;
 
+    // adjacency indexes, kept in sync with 'transitions' so post/pre cost O(degree) instead of O(|T|)
+    private Map<STATE, Set<Transition<STATE, ACTION>>> outgoing;
+    private Map<STATE, Set<Transition<STATE, ACTION>>> incoming;
+    private Map<STATE, Map<ACTION, Set<STATE>>> postByAction;
+    private Map<STATE, Map<ACTION, Set<STATE>>> preByAction;
+
     TransitionSystemImpl() {
         name = "";
         actions = new HashSet<>();
@@ -25,6 +31,10 @@ public class TransitionSystemImpl<STATE, ACTION, ATOMIC_PROPOSITION> implements
         transitions = new HashSet<>();
         atomic_propositions = new HashSet<>();
         labelsMap = new HashMap<>();
+        outgoing = new HashMap<>();
+        incoming = new HashMap<>();
+        postByAction = new HashMap<>();
+        preByAction = new HashMap<>();
     }
 
     @Override
@@ -65,7 +75,12 @@ public class TransitionSystemImpl<STATE, ACTION, ATOMIC_PROPOSITION> implements
     public void addTransition(Transition<STATE, ACTION> t) throws FVMException {
         if (!states.contains(t.getFrom()) || !states.contains(t.getTo()) || !actions.contains(t.getAction()))
             throw new InvalidTransitionException(t);
-        transitions.add(t);
+        if (transitions.add(t)) {
+            outgoing.computeIfAbsent(t.getFrom(), k -> new HashSet<>()).add(t);
+            incoming.computeIfAbsent(t.getTo(), k -> new HashSet<>()).add(t);
+            postByAction.computeIfAbsent(t.getFrom(), k -> new HashMap<>()).computeIfAbsent(t.getAction(), k -> new HashSet<>()).add(t.getTo());
+            preByAction.computeIfAbsent(t.getTo(), k -> new HashMap<>()).computeIfAbsent(t.getAction(), k -> new HashSet<>()).add(t.getFrom());
+        }
     }
 
     @Override
@@ -116,7 +131,8 @@ public class TransitionSystemImpl<STATE, ACTION, ATOMIC_PROPOSITION> implements
 
     @Override
     public Set<Transition<STATE, ACTION>> getTransitions() {
-        return transitions;
+        // read only, so the adjacency indexes can't be bypassed
+        return Collections.unmodifiableSet(transitions);
     }
 
     @Override
@@ -157,17 +173,103 @@ public class TransitionSystemImpl<STATE, ACTION, ATOMIC_PROPOSITION> implements
             throw new DeletionOfAttachedStateException(state, TransitionSystemPart.INITIAL_STATES);
         if (labelsMap.get(state).size() > 0)
             throw new DeletionOfAttachedStateException(state, TransitionSystemPart.LABELING_FUNCTION);
-        for (Transition<STATE, ACTION> t : transitions) {
-            if (t.getFrom().equals(state) || t.getTo().equals(state))
-                throw new DeletionOfAttachedStateException(state, TransitionSystemPart.TRANSITIONS);
-        }
+        if (!outgoing(state).isEmpty() || !incoming(state).isEmpty())
+            throw new DeletionOfAttachedStateException(state, TransitionSystemPart.TRANSITIONS);
         states.remove(state);
+        labelsMap.remove(state);
+        outgoing.remove(state);
+        incoming.remove(state);
+        postByAction.remove(state);
+        preByAction.remove(state);
     }
 
     @Override
     public void removeTransition(Transition<STATE, ACTION> t) {
         if (!states.contains(t.getFrom()) || !states.contains(t.getTo()) || !actions.contains(t.getAction()))
             throw new InvalidTransitionException(t);
-        transitions.remove(t);
+        if (transitions.remove(t)) {
+            outgoing.get(t.getFrom()).remove(t);
+            incoming.get(t.getTo()).remove(t);
+            removeFromIndex(postByAction, t.getFrom(), t.getAction(), t.getTo());
+            removeFromIndex(preByAction, t.getTo(), t.getAction(), t.getFrom());
+        }
+    }
+
+    /**
+     * Removes every state not in {@code keep}, with its labels and the transitions touching it, in one
+     * pass over the states and transitions. Actions and atomic propositions are kept.
+     */
+    void retainStates(Set<? extends STATE> keep) {
+        Set<STATE> keptStates = new HashSet<>();
+        Map<STATE, Set<ATOMIC_PROPOSITION>> keptLabels = new HashMap<>();
+        for (STATE s : states) {
+            if (keep.contains(s)) {
+                keptStates.add(s);
+                keptLabels.put(s, labelsMap.get(s));
+            }
+        }
+        Set<STATE> keptInitials = new HashSet<>();
+        for (STATE s : initials)
+            if (keptStates.contains(s))
+                keptInitials.add(s);
+
+        Set<Transition<STATE, ACTION>> all = transitions;
+        states = keptStates;
+        initials = keptInitials;
+        labelsMap = keptLabels;
+        transitions = new HashSet<>();
+        outgoing = new HashMap<>();
+        incoming = new HashMap<>();
+        postByAction = new HashMap<>();
+        preByAction = new HashMap<>();
+        for (Transition<STATE, ACTION> t : all)
+            if (keptStates.contains(t.getFrom()) && keptStates.contains(t.getTo()))
+                addTransition(t);
+    }
+
+    /**
+     * @return the transitions leaving {@code s} (empty if there are none).
+     */
+    Set<Transition<STATE, ACTION>> outgoing(STATE s) {
+        Set<Transition<STATE, ACTION>> out = outgoing.get(s);
+        return out == null ? Collections.emptySet() : Collections.unmodifiableSet(out);
+    }
+
+    /**
+     * @return the transitions entering {@code s} (empty if there are none).
+     */
+    Set<Transition<STATE, ACTION>> incoming(STATE s) {
+        Set<Transition<STATE, ACTION>> in = incoming.get(s);
+        return in == null ? Collections.emptySet() : Collections.unmodifiableSet(in);
+    }
+
+    /**
+     * @return the states reachable from {@code s} by a single {@code a} step.
+     */
+    Set<STATE> post(STATE s, ACTION a) {
+        return lookup(postByAction, s, a);
+    }
+
+    /**
+     * @return the states that reach {@code s} by a single {@code a} step.
+     */
+    Set<STATE> pre(STATE s, ACTION a) {
+        return lookup(preByAction, s, a);
+    }
+
+    private Set<STATE> lookup(Map<STATE, Map<ACTION, Set<STATE>>> index, STATE s, ACTION a) {
+        Map<ACTION, Set<STATE>> byAction = index.get(s);
+        if (byAction == null)
+            return Collections.emptySet();
+        Set<STATE> result = byAction.get(a);
+        return result == null ? Collections.emptySet() : Collections.unmodifiableSet(result);
+    }
+
+    private void removeFromIndex(Map<STATE, Map<ACTION, Set<STATE>>> index, STATE key, ACTION a, STATE value) {
+        Map<ACTION, Set<STATE>> byAction = index.get(key);
+        Set<STATE> values = byAction.get(a);
+        values.remove(value);
+        if (values.isEmpty())
+            byAction.remove(a);
     }
 }
\ No newline at end of file
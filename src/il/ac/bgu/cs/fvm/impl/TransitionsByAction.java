@@ -0,0 +1,43 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import il.ac.bgu.cs.fvm.transitionsystem.Transition;
+import il.ac.bgu.cs.fvm.transitionsystem.TransitionSystem;
+
+import java.util.*;
+
+/**
+ * The outgoing transitions of each state of a transition system, bucketed by action. A state's buckets
+ * are built the first time the state is asked for, and kept, so synchronizing on an action is a lookup
+ * rather than a scan of the state's transitions.
+ */
+class TransitionsByAction<S, A> {
+
+    private final Adjacency<S, A> adjacency;
+    private final Map<S, Map<A, List<Transition<S, A>>>> buckets = new HashMap<>();
+
+    TransitionsByAction(TransitionSystem<S, A, ?> ts) {
+        this.adjacency = new Adjacency<>(ts);
+    }
+
+    /**
+     * @return the outgoing transitions of {@code s}, by action.
+     */
+    Map<A, List<Transition<S, A>>> from(S s) {
+        Map<A, List<Transition<S, A>>> byAction = buckets.get(s);
+        if (byAction == null) {
+            byAction = new HashMap<>();
+            for (Transition<S, A> t : adjacency.outgoing(s))
+                byAction.computeIfAbsent(t.getAction(), k -> new ArrayList<>()).add(t);
+            buckets.put(s, byAction);
+        }
+        return byAction;
+    }
+
+    /**
+     * @return the transitions {@code s -action-> s'}.
+     */
+    List<Transition<S, A>> from(S s, A action) {
+        List<Transition<S, A>> transitions = from(s).get(action);
+        return transitions == null ? Collections.emptyList() : transitions;
+    }
+}
@@ -0,0 +1,113 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.*;
+
+/**
+ * An immutable evaluation of integer variables, stored as one {@code int} per variable of its
+ * {@link VariableLayout}, with the hash computed once. It is a read only {@code Map} view at the API
+ * boundary, equal to (and hashing like) any map with the same entries, so it can stand in for the
+ * {@code HashMap}s the definitions produce: a state of a few variables costs tens of bytes instead of
+ * hundreds.
+ */
+final class Valuation extends AbstractMap<String, Object> {
+
+    private final VariableLayout layout;
+    private final int[] values;
+    private final int hash;
+    private Set<Entry<String, Object>> entries;
+
+    Valuation(VariableLayout layout, int[] values) {
+        this.layout = layout;
+        this.values = values;
+        int h = 0;
+        // the Map contract: the sum of key.hashCode() ^ value.hashCode() over the entries
+        for (int i = 0; i < values.length; i++)
+            h += layout.nameHash(i) ^ values[i];
+        this.hash = h;
+    }
+
+    /**
+     * @return this evaluation, with {@code name} set to {@code value}.
+     */
+    Valuation with(String name, int value) {
+        int slot = layout.slot(name);
+        if (slot >= 0) {
+            if (values[slot] == value)
+                return this;
+            int[] changed = values.clone();
+            changed[slot] = value;
+            return new Valuation(layout, changed);
+        }
+        VariableLayout extended = layout.with(name);
+        int[] changed = new int[extended.size()];
+        for (int i = 0; i < changed.length; i++) {
+            String variable = extended.name(i);
+            changed[i] = variable.equals(name) ? value : values[layout.slot(variable)];
+        }
+        return new Valuation(extended, changed);
+    }
+
+    @Override
+    public Object get(Object key) {
+        int slot = layout.slot(key);
+        return slot < 0 ? null : values[slot];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return layout.slot(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (entries == null) {
+            entries = new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<Entry<String, Object>>() {
+                        private int next;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < values.length;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (next >= values.length)
+                                throw new NoSuchElementException();
+                            Entry<String, Object> entry = new SimpleImmutableEntry<>(layout.name(next), values[next]);
+                            next++;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return values.length;
+                }
+            };
+        }
+        return entries;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (o instanceof Valuation && ((Valuation) o).layout == layout)
+            return ((Valuation) o).hash == hash && Arrays.equals(((Valuation) o).values, values);
+        return super.equals(o);
+    }
+}
@@ -0,0 +1,92 @@
+package il.ac.bgu.cs.fvm.impl;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The slots of a set of variables in a {@link Valuation}: the names, sorted, and the index of each.
+ * Layouts are interned in a {@link Table}, one per key set, so valuations with the same variables share
+ * their layout and compare as plain arrays. A layout is extended by one variable through a cached lookup,
+ * so an action defining a new variable doesn't rebuild the layout on every state.
+ */
+final class VariableLayout {
+
+    private final Table table;
+    private final String[] names;
+    private final int[] nameHashes;
+    private final Map<String, Integer> slots;
+    private final Map<String, VariableLayout> extensions = new ConcurrentHashMap<>();
+
+    private VariableLayout(Table table, String[] names) {
+        this.table = table;
+        this.names = names;
+        this.nameHashes = new int[names.length];
+        this.slots = new HashMap<>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            nameHashes[i] = names[i].hashCode();
+            slots.put(names[i], i);
+        }
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    String name(int slot) {
+        return names[slot];
+    }
+
+    int nameHash(int slot) {
+        return nameHashes[slot];
+    }
+
+    /**
+     * @return the slot of {@code name}, or -1 if it is not a variable of this layout.
+     */
+    int slot(Object name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * @return the layout of these variables and {@code name}.
+     */
+    VariableLayout with(String name) {
+        return extensions.computeIfAbsent(name, n -> {
+            List<String> extended = new ArrayList<>(Arrays.asList(names));
+            extended.add(n);
+            return table.layout(extended);
+        });
+    }
+
+    /**
+     * The layouts of one program graph or channel system. Thread safe.
+     */
+    static final class Table {
+
+        private final Map<List<String>, VariableLayout> layouts = new ConcurrentHashMap<>();
+
+        VariableLayout layout(Collection<String> names) {
+            String[] sorted = names.toArray(new String[0]);
+            Arrays.sort(sorted);
+            return layouts.computeIfAbsent(Arrays.asList(sorted), k -> new VariableLayout(this, sorted));
+        }
+
+        /**
+         * @return {@code eval} as a {@link Valuation} if all its values are integers, or {@code eval}
+         * itself otherwise (e.g. when it holds channel contents).
+         */
+        Map<String, Object> compact(Map<String, Object> eval) {
+            if (eval == null || eval instanceof Valuation)
+                return eval;
+            for (Map.Entry<String, Object> entry : eval.entrySet())
+                if (entry.getKey() == null || !(entry.getValue() instanceof Integer))
+                    return eval;
+            VariableLayout layout = layout(eval.keySet());
+            int[] values = new int[layout.size()];
+            for (int i = 0; i < values.length; i++)
+                values[i] = (Integer) eval.get(layout.name(i));
+            return new Valuation(layout, values);
+        }
+    }
+}